@@ -0,0 +1,162 @@
+/**
+ * This class implements an input stream that decompresses data written by AdaptiveHuffmanOutputStream. It runs
+ * the same AdaptiveModel as the writer and rebuilds its HuffmanDecoder whenever the model rebuilds the code.
+ *
+ * Input is only read when the buffered bits do not hold a complete code, so everything up to a flush point of
+ * the writer can be read without blocking on data the writer has not sent yet. A read returns early at a flush
+ * point for the same reason.
+ */
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+public class AdaptiveHuffmanInputStream extends FilterInputStream {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final AdaptiveModel model;
+    private final byte[] buffer;
+    private HuffmanDecoder decoder;
+    private int position;
+    private int limit;
+    private long bitBuffer; // next unread bits, left aligned
+    private int bitCount;
+    private boolean endOfInput;
+
+    public AdaptiveHuffmanInputStream(InputStream in) {
+        super(in);
+        this.model = new AdaptiveModel();
+        this.buffer = new byte[BUFFER_SIZE];
+        this.decoder = new HuffmanDecoder(model.codes());
+        this.position = 0;
+        this.limit = 0;
+        this.bitBuffer = 0;
+        this.bitCount = 0;
+        this.endOfInput = false;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int symbol;
+        do {
+            symbol = readSymbol();
+            if (symbol < 0) {
+                return -1;
+            }
+        } while (symbol == AdaptiveModel.FLUSH);
+        return symbol;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || off + len > b.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (len == 0) {
+            return 0;
+        }
+        int n = 0;
+        while (n < len) {
+            int symbol = readSymbol();
+            if (symbol < 0) {
+                return (n == 0 ? -1 : n);
+            }
+            if (symbol == AdaptiveModel.FLUSH) {
+                // the writer flushed here; return what we have rather than block waiting for more
+                if (n > 0) {
+                    return n;
+                }
+                continue;
+            }
+            b[off + n++] = (byte) symbol;
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = 0;
+        while (skipped < n && read() >= 0) {
+            skipped++;
+        }
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return 0;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+
+    /**
+     * Decodes the next symbol (a byte value or AdaptiveModel.FLUSH) and updates the model. Returns -1 at the
+     * end of the stream, which can only come right after a FLUSH.
+     */
+    private int readSymbol() throws IOException {
+        int entry = decoder.decodeNext(bitBuffer);
+        while (entry < 0 || (entry & 0xFF) > bitCount) {
+            if (!readByte()) {
+                if (bitCount == 0) {
+                    return -1;
+                }
+                throw new IOException("Compressed stream ends in the middle of a code");
+            }
+            entry = decoder.decodeNext(bitBuffer);
+            if (entry < 0 && bitCount >= AdaptiveModel.MAX_CODE_LENGTH) {
+                throw new IOException("Invalid code in compressed stream");
+            }
+        }
+        int symbol = entry >>> 8;
+        int codeLength = entry & 0xFF;
+        bitBuffer <<= codeLength;
+        bitCount -= codeLength;
+        if (symbol == AdaptiveModel.FLUSH) {
+            // skip the padding up to the next whole byte
+            int padding = bitCount & 7;
+            bitBuffer <<= padding;
+            bitCount -= padding;
+        }
+        if (model.update(symbol)) {
+            decoder = new HuffmanDecoder(model.codes());
+        }
+        return symbol;
+    }
+
+    /**
+     * Moves one more input byte into the bit buffer. Returns false at the end of the input.
+     */
+    private boolean readByte() throws IOException {
+        if (position == limit) {
+            if (endOfInput) {
+                return false;
+            }
+            int n = in.read(buffer, 0, buffer.length);
+            if (n < 0) {
+                endOfInput = true;
+                return false;
+            }
+            position = 0;
+            limit = n;
+            if (n == 0) {
+                return true;
+            }
+        }
+        bitBuffer |= (buffer[position++] & 0xFFL) << (56 - bitCount);
+        bitCount += 8;
+        return true;
+    }
+}
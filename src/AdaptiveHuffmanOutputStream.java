@@ -0,0 +1,130 @@
+/**
+ * This class implements an output stream that Huffman compresses in a single pass. Unlike HuffmanOutputStream
+ * it never waits for a block of data to count frequencies: every byte is coded right away with the current
+ * code of an AdaptiveModel, which the decoder rebuilds in lockstep, so no code tables are stored in the
+ * output. This suits live data such as log streams where latency matters.
+ *
+ * flush() writes a FLUSH symbol, pads to a whole byte and hands everything written so far to the underlying
+ * stream, so the reader can decode all of it immediately. Read the data back with AdaptiveHuffmanInputStream.
+ */
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+public class AdaptiveHuffmanOutputStream extends FilterOutputStream {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final AdaptiveModel model;
+    private final byte[] buffer;
+    private CodeTable codes;
+    private int count;
+    private long bitBuffer; // pending bits, right aligned
+    private int bitCount;
+    private boolean pending; // symbols written since the last FLUSH
+    private boolean finished;
+
+    public AdaptiveHuffmanOutputStream(OutputStream out) {
+        super(out);
+        this.model = new AdaptiveModel();
+        this.buffer = new byte[BUFFER_SIZE];
+        this.codes = model.codes();
+        this.count = 0;
+        this.bitBuffer = 0;
+        this.bitCount = 0;
+        this.pending = false;
+        this.finished = false;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        writeSymbol(b & 0xFF);
+        pending = true;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        if (off < 0 || len < 0 || off + len > b.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        int end = off + len;
+        for (int i = off; i < end; i++) {
+            writeSymbol(b[i] & 0xFF);
+        }
+        pending |= (len > 0);
+    }
+
+    /**
+     * Ends the current run of symbols with a FLUSH symbol and byte padding, and flushes everything to the
+     * underlying stream so the reader can decode all data written so far
+     */
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        writeFlush();
+        out.flush();
+    }
+
+    /**
+     * Writes any pending symbols without closing the underlying stream. Nothing more can be written after this.
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        writeFlush();
+        finished = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void writeFlush() throws IOException {
+        if (pending) {
+            writeSymbol(AdaptiveModel.FLUSH);
+            if (bitCount > 0) {
+                writeByte((int) (bitBuffer << (8 - bitCount)));
+                bitCount = 0;
+            }
+            pending = false;
+        }
+        out.write(buffer, 0, count);
+        count = 0;
+    }
+
+    private void writeSymbol(int symbol) throws IOException {
+        // codes are at most AdaptiveModel.MAX_CODE_LENGTH bits, so fewer than 8 + 15 bits are ever pending
+        bitBuffer = (bitBuffer << codes.length(symbol)) | codes.code(symbol);
+        bitCount += codes.length(symbol);
+        while (bitCount >= 8) {
+            bitCount -= 8;
+            writeByte((int) (bitBuffer >>> bitCount));
+        }
+        if (model.update(symbol)) {
+            codes = model.codes();
+        }
+    }
+
+    private void writeByte(int b) throws IOException {
+        buffer[count++] = (byte) b;
+        if (count == buffer.length) {
+            out.write(buffer, 0, count);
+            count = 0;
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (finished) {
+            throw new IOException("Stream already finished");
+        }
+    }
+}
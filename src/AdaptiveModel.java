@@ -0,0 +1,75 @@
+/**
+ * This class implements the symbol model shared by AdaptiveHuffmanOutputStream and AdaptiveHuffmanInputStream.
+ * It starts with every symbol equally likely, counts each symbol as it is coded and periodically rebuilds a
+ * canonical code from the counts. The encoder and decoder call update with the same symbols in the same order,
+ * so their codes stay in lockstep and no code ever has to be transmitted.
+ *
+ * Rebuilds happen after FIRST_REBUILD_INTERVAL symbols, with the interval doubling up to MAX_REBUILD_INTERVAL,
+ * so the code adapts quickly at the start and costs little per symbol later on. Once the counts add up to more
+ * than MAX_TOTAL they are halved, so the model follows data whose statistics drift over time.
+ */
+
+import java.util.Arrays;
+
+public class AdaptiveModel {
+
+    /** The 256 byte values plus FLUSH */
+    public static final int SYMBOLS = 257;
+
+    /** Symbol marking a flush point; the encoder pads to a whole byte after it */
+    public static final int FLUSH = 256;
+
+    public static final int MAX_CODE_LENGTH = HuffmanBlock.DEFAULT_MAX_CODE_LENGTH;
+    public static final int FIRST_REBUILD_INTERVAL = 32;
+    public static final int MAX_REBUILD_INTERVAL = 1 << 13;
+    public static final long MAX_TOTAL = 1L << 18;
+
+    private final long[] counts;
+    private long total;
+    private int interval;
+    private int untilRebuild;
+    private CodeTable codes;
+
+    public AdaptiveModel() {
+        this.counts = new long[SYMBOLS];
+        Arrays.fill(counts, 1);
+        this.total = SYMBOLS;
+        this.interval = FIRST_REBUILD_INTERVAL;
+        this.untilRebuild = interval;
+        rebuild();
+    }
+
+    /**
+     * Returns the current code, indexed by symbol. Every symbol always has a code.
+     */
+    public CodeTable codes() {
+        return codes;
+    }
+
+    /**
+     * Counts one more occurrence of symbol. Returns true if this rebuilt the code, in which case anything
+     * derived from codes() (such as a HuffmanDecoder) must be rebuilt too.
+     */
+    public boolean update(int symbol) {
+        counts[symbol]++;
+        total++;
+        if (--untilRebuild > 0) {
+            return false;
+        }
+        if (total > MAX_TOTAL) {
+            total = 0;
+            for (int s = 0; s < SYMBOLS; s++) {
+                counts[s] = (counts[s] + 1) / 2;
+                total += counts[s];
+            }
+        }
+        interval = Math.min(MAX_REBUILD_INTERVAL, 2 * interval);
+        untilRebuild = interval;
+        rebuild();
+        return true;
+    }
+
+    private void rebuild() {
+        codes = CanonicalCode.fromLengths(LengthLimitedCode.codeLengths(counts, MAX_CODE_LENGTH));
+    }
+}
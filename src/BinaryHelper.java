@@ -3,10 +3,10 @@
  * their corresponding byte array representations
  */
 
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
 import java.util.List;
 import java.io.File;
 
@@ -21,15 +21,11 @@ public class BinaryHelper {
      * @return String of 1's and 0's corresponding to the binary representation of bits
      */
     public static String bitStringFromBooleanList(List<Boolean> bits) {
-        String boolStr = "";
+        StringBuilder boolStr = new StringBuilder(bits.size());
         for (Boolean bit : bits) {
-            if (bit) {
-                boolStr = boolStr.concat("1");
-            } else {
-                boolStr = boolStr.concat("0");
-            }
+            boolStr.append(bit ? '1' : '0');
         }
-        return boolStr;
+        return boolStr.toString();
     }
 
     /**
@@ -40,12 +36,11 @@ public class BinaryHelper {
      * @return String of 0's and 1's that is the binary representation of b
      */
     public static String bitStringFromByte(byte b) {
-        String tail = Integer.toBinaryString(b & 0xFF).replace(' ', '0');
-        int tailLen = tail.length();
-        for (int i=0; i<8-tailLen; i++) {
-            tail = "0".concat(tail);
+        char[] bits = new char[8];
+        for (int i = 0; i < 8; i++) {
+            bits[i] = (char) ('0' + ((b >>> (7 - i)) & 1));
         }
-        return tail;
+        return new String(bits);
     }
 
     /**
@@ -58,20 +53,17 @@ public class BinaryHelper {
      * @return String of 0's and 1's that is the binary representation of byteArray
      */
     public static String bitStringFromByteArray(byte[] byteArray) {
-        String bitString = "";
-        for (int i = 1; i < byteArray.length; i++) {
-            bitString = bitString.concat(BinaryHelper.bitStringFromByte(byteArray[i]));
-        }
-
         // First byte is a mask which indicates if any bits in the last byte should be ignored.
         // This would happen if we wanted to write a non byte-aligned string
         // (e.g. 0110110 would be stored as 01101100 where the extra zero at the
         // end is needed to make the string byte-aligned. Then the first byte would be
         // 00000001, which indicates that the last bit in the last byte should be ignored.
-        int extra = (int)byteArray[0];
-        bitString = bitString.substring(0,bitString.length()-extra);
-
-        return bitString;
+        BitReader reader = new BitReader(byteArray);
+        StringBuilder bitString = new StringBuilder((int) reader.bitsRemaining());
+        while (reader.bitsRemaining() > 0) {
+            bitString.append(reader.readBit() ? '1' : '0');
+        }
+        return bitString.toString();
     }
 
     /**
@@ -83,34 +75,15 @@ public class BinaryHelper {
      *
      */
     public static byte[] byteArrayFromBitString(String bitString) {
-        int extra = bitString.length() % 8;
-        int numBytes = bitString.length()/8 + (extra == 0 ? 0 : 1);
-        byte[] byteArray = new byte[numBytes+1];
-
-        for (int i=0; i < bitString.length()/8; i++) {
-            String byteString = bitString.substring(8 * i, 8 * i + 8);
-            Integer val = Integer.parseInt(byteString,2);
-            val = (val > 127 ? val-256 : val);
-            byteArray[i+1] = Byte.parseByte(val.toString(), 10);
-        }
-
-        if (extra != 0) {
-            int start = 8*(bitString.length()/8);
-            String byteString = bitString.substring(start, start + extra);
-            for (int i=0; i<8-extra; i++) {
-                byteString = byteString.concat("0");
+        BitWriter writer = new BitWriter(bitString.length() / 8 + 1);
+        for (int i = 0; i < bitString.length(); i++) {
+            char c = bitString.charAt(i);
+            if (c != '0' && c != '1') {
+                throw new NumberFormatException("Not a bit: " + c);
             }
-
-            Integer val = Integer.parseInt(byteString, 2);
-            val = (val > 127 ? val-256 : val);
-            byteArray[bitString.length() / 8 + 1] = Byte.parseByte(val.toString(),10);
-            byteArray[0] = (byte) (8-extra);
-
-        } else {
-            byteArray[0] = 0;
+            writer.writeBits(c - '0', 1);
         }
-
-        return byteArray;
+        return writer.toByteArray();
     }
 
     /**
@@ -118,9 +91,15 @@ public class BinaryHelper {
      */
     public static byte byteFromBitString(String bits) {
         assert bits.length() == 8;
-        Integer val = Integer.parseInt(bits,2);
-        val = (val > 127 ? val-256 : val);
-        return Byte.parseByte(val.toString(), 10);
+        int val = 0;
+        for (int i = 0; i < bits.length(); i++) {
+            char c = bits.charAt(i);
+            if (c != '0' && c != '1') {
+                throw new NumberFormatException("Not a bit: " + c);
+            }
+            val = (val << 1) | (c - '0');
+        }
+        return (byte) val;
     }
 
     /**
@@ -128,56 +107,33 @@ public class BinaryHelper {
      * character. Assumes that input character is an ASCII character.
      */
     public static String binaryAsciiCodeFromChar(char c) {
-        String tail = Integer.toBinaryString(c & 0xFF).replace(' ', '0');
-        int tailLen = tail.length();
-        for (int i=0; i<8-tailLen; i++) {
-            tail = "0".concat(tail);
-        }
-        return tail;
+        return bitStringFromByte((byte) c);
     }
 
     /**
-     * Writes contents of a byte array to the file specified by fileName
+     * Writes contents of a byte array to the file specified by fileName. Throws UncheckedIOException if the
+     * file cannot be written.
      */
     public static void writeBytesToFile(String fileName, byte[] bytes) {
         File f = new File(fileName);
-        try {
-            FileOutputStream fs = new FileOutputStream(f);
+        try (FileOutputStream fs = new FileOutputStream(f)) {
             fs.write(bytes);
-            fs.close();
         } catch (IOException e) {
-            e.printStackTrace();
-            System.out.println("Could not write to file: " + fileName);
+            throw new UncheckedIOException("Could not write to file: " + fileName, e);
         }
     }
 
     /**
-     * Opens a file and returns the contents of the entire file as a byte array
+     * Opens a file and returns the contents of the entire file as a byte array. Throws UncheckedIOException
+     * if the file cannot be read.
      */
     public static byte[] readBytesFromFile(String fileName) {
         File f = new File(fileName);
-        ArrayList<Byte> bytes = new ArrayList<Byte>();
-
         try {
-            FileInputStream fr = new FileInputStream(f);
-            int nextChar;
-            int i = 0;
-            while ((nextChar = fr.read()) != -1) {
-                bytes.add(i, (byte)nextChar);
-                i++;
-            }
+            return Files.readAllBytes(f.toPath());
         } catch (IOException e) {
-            e.printStackTrace();
-            System.out.print("Could not read file: " + fileName);
-            return null;
+            throw new UncheckedIOException("Could not read file: " + fileName, e);
         }
-
-        byte[] byteArray = new byte[bytes.size()];
-        for (int i=0; i<bytes.size(); i++) {
-            byteArray[i] = bytes.get(i);
-        }
-
-        return byteArray;
     }
 
 
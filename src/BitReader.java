@@ -0,0 +1,195 @@
+/**
+ * This class implements a bit reader over the packed byte arrays written by BitWriter (and
+ * BinaryHelper.byteArrayFromBitString). The first byte of the array holds the padding count and is not part
+ * of the data. Bits are read most significant bit first through a 64-bit buffer, which is refilled with a
+ * single 8 byte load whenever at least 8 bytes of input are left, and byte by byte only near the end.
+ *
+ * The packed data can be read from a byte array or from a ByteBuffer (heap, direct or memory mapped). Buffers
+ * are read with absolute gets, so their position is never changed.
+ */
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+public class BitReader {
+
+    private static final VarHandle LONG_VIEW = MethodHandles.byteArrayViewVarHandle(long[].class,
+            ByteOrder.BIG_ENDIAN);
+
+    private byte[] bytes;
+    private ByteBuffer buffer;
+    private boolean littleEndian;
+    private int end;
+    private int position;
+    private long bitBuffer; // next unread bits, left aligned
+    private int bitCount;
+    private long remaining;
+
+    public BitReader(byte[] bytes) {
+        this(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Creates a reader over the packed byte array stored in bytes[offset .. offset + length), starting with
+     * its padding count byte
+     */
+    public BitReader(byte[] bytes, int offset, int length) {
+        reset(bytes, offset, length);
+    }
+
+    /**
+     * Creates a reader over the packed bytes stored in buffer at the absolute indexes
+     * [offset .. offset + length), starting with the padding count byte
+     */
+    public BitReader(ByteBuffer buffer, int offset, int length) {
+        reset(buffer, offset, length);
+    }
+
+    /**
+     * Points this reader at the packed byte array stored in bytes[offset .. offset + length), so that one
+     * reader can be reused for many arrays without allocating
+     */
+    public void reset(byte[] bytes, int offset, int length) {
+        this.remaining = HuffmanDecoder.validBits(bytes, offset, length);
+        this.bytes = bytes;
+        this.buffer = null;
+        this.littleEndian = false;
+        this.end = offset + length;
+        this.position = offset + 1;
+        this.bitBuffer = 0;
+        this.bitCount = 0;
+    }
+
+    /**
+     * Points this reader at the packed bytes stored in buffer at the absolute indexes [offset .. offset + length)
+     */
+    public void reset(ByteBuffer buffer, int offset, int length) {
+        this.remaining = HuffmanDecoder.validBits(buffer, offset, length);
+        this.bytes = null;
+        this.buffer = buffer;
+        this.littleEndian = (buffer.order() == ByteOrder.LITTLE_ENDIAN);
+        this.end = offset + length;
+        this.position = offset + 1;
+        this.bitBuffer = 0;
+        this.bitCount = 0;
+    }
+
+    /**
+     * Returns the number of bits that have not been read yet
+     */
+    public long bitsRemaining() {
+        return remaining;
+    }
+
+    /**
+     * Reads numBits bits (0 to 64) and returns them right aligned. Throws IllegalArgumentException if fewer
+     * than numBits bits are left.
+     */
+    public long readBits(int numBits) {
+        if (numBits > remaining) {
+            throw new IllegalArgumentException("Not enough bits left to read " + numBits + " bits");
+        }
+        if (numBits > 32) {
+            long high = readBits(numBits - 32);
+            return (high << 32) | readBits(32);
+        }
+        if (numBits == 0) {
+            return 0;
+        }
+        if (bitCount < numBits) {
+            refill();
+        }
+        long bits = bitBuffer >>> (64 - numBits);
+        bitBuffer <<= numBits;
+        bitCount -= numBits;
+        remaining -= numBits;
+        return bits;
+    }
+
+    /**
+     * Reads a single bit
+     */
+    public boolean readBit() {
+        return readBits(1) == 1;
+    }
+
+    /**
+     * Returns the next unread bits, left aligned, without consuming them. At least 32 bits are filled in, or
+     * all that are left; the bits after the end of the data are 0. For decoders that look up a code in a
+     * table and then consume its length with skipBits.
+     */
+    public long peekBits() {
+        if (bitCount < 32) {
+            refill();
+        }
+        return bitBuffer;
+    }
+
+    /**
+     * Consumes numBits bits (0 to 32) after a call to peekBits. Throws IllegalArgumentException if fewer than
+     * numBits bits are left.
+     */
+    public void skipBits(int numBits) {
+        if (numBits > remaining) {
+            throw new IllegalArgumentException("Encoded data ends in the middle of a code");
+        }
+        bitBuffer <<= numBits;
+        bitCount -= numBits;
+        remaining -= numBits;
+    }
+
+    /**
+     * Skips over the next numBits bits, which may be any number up to bitsRemaining()
+     */
+    public void skip(long numBits) {
+        if (numBits < 0 || numBits > remaining) {
+            throw new IllegalArgumentException("Not enough bits left to skip " + numBits + " bits");
+        }
+        remaining -= numBits;
+        if (numBits < bitCount) {
+            bitBuffer <<= numBits;
+            bitCount -= (int) numBits;
+            return;
+        }
+        // drop the buffered bits and jump over the whole bytes that follow them
+        numBits -= bitCount;
+        bitBuffer = 0;
+        bitCount = 0;
+        position += (int) (numBits >>> 3);
+        int bits = (int) (numBits & 7);
+        if (bits > 0) {
+            refill();
+            bitBuffer <<= bits;
+            bitCount -= bits;
+        }
+    }
+
+    private void refill() {
+        if (end - position >= 8) {
+            // load 8 bytes at once and keep the whole bytes that fit behind the unread bits
+            long word;
+            if (bytes != null) {
+                word = (long) LONG_VIEW.get(bytes, position);
+            } else {
+                word = buffer.getLong(position);
+                if (littleEndian) {
+                    word = Long.reverseBytes(word);
+                }
+            }
+            int count = (63 - bitCount) >>> 3;
+            bitBuffer |= word >>> bitCount;
+            bitCount += 8 * count;
+            bitBuffer &= -1L << (64 - bitCount);
+            position += count;
+            return;
+        }
+        while (bitCount <= 56 && position < end) {
+            int b = (bytes != null ? bytes[position] : buffer.get(position)) & 0xFF;
+            position++;
+            bitBuffer |= (long) b << (56 - bitCount);
+            bitCount += 8;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/**
+ * This class implements a bit writer that packs variable length codes directly into a byte array using a
+ * 64-bit accumulator. The output uses the same layout as BinaryHelper.byteArrayFromBitString: the first byte
+ * holds the number of padding bits (up to 7) that were added to the end of the last byte.
+ */
+
+import java.util.Arrays;
+
+public class BitWriter {
+
+    private byte[] buffer;
+    private int position;
+    private long bitBuffer;
+    private int bitCount;
+
+    public BitWriter() {
+        this(64);
+    }
+
+    /**
+     * Creates a writer whose backing array starts out large enough for expectedBytes bytes of output
+     */
+    public BitWriter(int expectedBytes) {
+        this.buffer = new byte[Math.max(expectedBytes, 8) + 1];
+        this.position = 1; // first byte is reserved for the padding count
+        this.bitBuffer = 0;
+        this.bitCount = 0;
+    }
+
+    /**
+     * Appends the lowest numBits bits of bits, most significant bit first (e.g. writeBits(0b011, 3)
+     * appends the bit string "011"). numBits can be anywhere from 0 to 64.
+     */
+    public void writeBits(long bits, int numBits) {
+        if (numBits > 32) {
+            writeBits(bits >>> 32, numBits - 32);
+            numBits = 32;
+        }
+        if (numBits == 0) {
+            return;
+        }
+        bitBuffer = (bitBuffer << numBits) | (bits & (-1L >>> (64 - numBits)));
+        bitCount += numBits;
+        if (bitCount >= 32) {
+            flushWord();
+        }
+    }
+
+    /**
+     * Appends a single bit
+     */
+    public void writeBit(boolean bit) {
+        writeBits(bit ? 1 : 0, 1);
+    }
+
+    /**
+     * Returns the number of bits written so far
+     */
+    public long bitLength() {
+        return 8L * (position - 1) + bitCount;
+    }
+
+    /**
+     * Pads the written bits with zeros up to a whole byte, fills in the padding count and returns the
+     * result as a byte array.
+     */
+    public byte[] toByteArray() {
+        while (bitCount >= 8) {
+            ensureCapacity(1);
+            bitCount -= 8;
+            buffer[position++] = (byte) (bitBuffer >>> bitCount);
+        }
+        byte[] result;
+        if (bitCount > 0) {
+            int extra = 8 - bitCount;
+            result = Arrays.copyOf(buffer, position + 1);
+            result[position] = (byte) (bitBuffer << extra);
+            result[0] = (byte) extra;
+        } else {
+            result = Arrays.copyOf(buffer, position);
+            result[0] = 0;
+        }
+        return result;
+    }
+
+    /**
+     * Moves 32 completed bits from the accumulator into the backing array
+     */
+    private void flushWord() {
+        ensureCapacity(4);
+        bitCount -= 32;
+        int word = (int) (bitBuffer >>> bitCount);
+        buffer[position] = (byte) (word >>> 24);
+        buffer[position + 1] = (byte) (word >>> 16);
+        buffer[position + 2] = (byte) (word >>> 8);
+        buffer[position + 3] = (byte) word;
+        position += 4;
+    }
+
+    private void ensureCapacity(int extraBytes) {
+        if (position + extraBytes > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + extraBytes));
+        }
+    }
+}
@@ -0,0 +1,375 @@
+/**
+ * This class implements the block container format, which splits the input into fixed size blocks that are
+ * compressed (counted, coded and encoded) and decompressed independently, in parallel on a ForkJoinPool.
+ * The container is laid out as (all numbers big-endian):
+ *
+ *   int     MAGIC
+ *   int     block size (uncompressed bytes per block, only the last block may be shorter)
+ *   long    total uncompressed length
+ *   int     number of blocks b
+ *   long[]  b + 1 offsets of the blocks, relative to the end of the index (the last one is the end of the data)
+ *   ...     the blocks, see HuffmanBlock, each followed by the int CRC32C of its uncompressed bytes
+ *
+ * Every reader checks the CRC32C of each block it decodes and rejects the container if it does not match, so
+ * corrupt data is never returned as if it were the original.
+ *
+ * Containers written by compressInterleaved start with INTERLEAVED_MAGIC instead and hold InterleavedBlocks,
+ * which split each block into four bitstreams that decode faster on a single core. Containers written by
+ * compressOrder1 start with ORDER1_MAGIC and hold Order1Blocks, which code each byte depending on the byte
+ * before it. Containers written by compressLz77 start with LZ77_MAGIC and hold Lz77Blocks, which replace
+ * repeated substrings by references before coding.
+ */
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32C;
+
+public class BlockCodec {
+
+    /** Identifies the block container format ("HBLK") */
+    public static final int MAGIC = 0x48424C4B;
+
+    /** Identifies the block container format with four stream blocks ("HBL4") */
+    public static final int INTERLEAVED_MAGIC = 0x48424C34;
+
+    /** Identifies the block container format with order-1 blocks ("HBL1") */
+    public static final int ORDER1_MAGIC = 0x48424C31;
+
+    /** Identifies the block container format with LZ77 blocks ("HBLZ") */
+    public static final int LZ77_MAGIC = 0x48424C5A;
+
+    static final int FIXED_HEADER_SIZE = 20;
+
+    /** Size of the CRC32C that follows every block */
+    static final int CHECKSUM_SIZE = 4;
+
+    /**
+     * Compresses data with the default block size and code length limit on the common ForkJoinPool
+     */
+    public static byte[] compress(byte[] data) {
+        return compress(data, HuffmanBlock.DEFAULT_BLOCK_SIZE, HuffmanBlock.DEFAULT_MAX_CODE_LENGTH,
+                ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Splits data into blocks of blockSize bytes, compresses the blocks in parallel on pool and returns the
+     * container
+     */
+    public static byte[] compress(byte[] data, int blockSize, int maxCodeLength, ForkJoinPool pool) {
+        return compress(data, blockSize, maxCodeLength, MAGIC, pool);
+    }
+
+    /**
+     * Same as compress above, but writes every block as an InterleavedBlock with four bitstreams. maxCodeLength
+     * must be at most InterleavedBlock.MAX_CODE_LENGTH.
+     */
+    public static byte[] compressInterleaved(byte[] data, int blockSize, int maxCodeLength, ForkJoinPool pool) {
+        return compress(data, blockSize, maxCodeLength, INTERLEAVED_MAGIC, pool);
+    }
+
+    /**
+     * Same as compress above, but writes every block as an Order1Block with a code per preceding byte
+     */
+    public static byte[] compressOrder1(byte[] data, int blockSize, int maxCodeLength, ForkJoinPool pool) {
+        return compress(data, blockSize, maxCodeLength, ORDER1_MAGIC, pool);
+    }
+
+    /**
+     * Same as compress above, but writes every block as an Lz77Block, with repeated substrings replaced by
+     * references to earlier copies
+     */
+    public static byte[] compressLz77(byte[] data, int blockSize, int maxCodeLength, ForkJoinPool pool) {
+        return compress(data, blockSize, maxCodeLength, LZ77_MAGIC, pool);
+    }
+
+    private static byte[] compress(final byte[] data, final int blockSize, final int maxCodeLength,
+                                   final int magic, ForkJoinPool pool) {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("Block size must be positive: " + blockSize);
+        }
+        int blockCount = (int) ((data.length + (long) blockSize - 1) / blockSize);
+
+        final int[] checksums = new int[blockCount];
+        List<Callable<byte[]>> tasks = new ArrayList<Callable<byte[]>>();
+        for (int i = 0; i < blockCount; i++) {
+            final int index = i;
+            final int offset = i * blockSize;
+            final int length = Math.min(blockSize, data.length - offset);
+            tasks.add(new Callable<byte[]>() {
+                @Override
+                public byte[] call() {
+                    checksums[index] = checksum(data, offset, length);
+                    return encodeBlock(magic, data, offset, length, maxCodeLength);
+                }
+            });
+        }
+        List<byte[]> blocks = runAll(pool, tasks);
+
+        int indexEnd = FIXED_HEADER_SIZE + 8 * (blockCount + 1);
+        long total = indexEnd;
+        for (byte[] block : blocks) {
+            total += block.length + CHECKSUM_SIZE;
+        }
+        if (total > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Compressed data too large for a byte array");
+        }
+
+        byte[] container = new byte[(int) total];
+        HuffmanBlock.writeInt(container, 0, magic);
+        HuffmanBlock.writeInt(container, 4, blockSize);
+        writeLong(container, 8, data.length);
+        HuffmanBlock.writeInt(container, 16, blockCount);
+        long offset = 0;
+        int position = indexEnd;
+        for (int i = 0; i < blockCount; i++) {
+            writeLong(container, FIXED_HEADER_SIZE + 8 * i, offset);
+            byte[] block = blocks.get(i);
+            System.arraycopy(block, 0, container, position, block.length);
+            HuffmanBlock.writeInt(container, position + block.length, checksums[i]);
+            position += block.length + CHECKSUM_SIZE;
+            offset += block.length + CHECKSUM_SIZE;
+        }
+        writeLong(container, FIXED_HEADER_SIZE + 8 * blockCount, offset);
+        return container;
+    }
+
+    /**
+     * Decompresses a container on the common ForkJoinPool
+     */
+    public static byte[] decompress(byte[] container) {
+        return decompress(container, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Decompresses a container produced by any of the compress methods, decoding the blocks in parallel on
+     * pool. Every block decodes straight into its place in the output array.
+     */
+    public static byte[] decompress(final byte[] container, ForkJoinPool pool) {
+        final int magic = (container.length < FIXED_HEADER_SIZE ? 0 : HuffmanBlock.readInt(container, 0));
+        if (!isContainer(magic)) {
+            throw new IllegalArgumentException("Not a block container");
+        }
+        final int blockSize = HuffmanBlock.readInt(container, 4);
+        long length = readLong(container, 8);
+        int blockCount = HuffmanBlock.readInt(container, 16);
+        if (blockSize <= 0 || length < 0 || length > Integer.MAX_VALUE - 8
+                || blockCount != (length + blockSize - 1) / blockSize) {
+            throw new IllegalArgumentException("Corrupt block container header");
+        }
+        if (FIXED_HEADER_SIZE + 8L * (blockCount + 1) > container.length) {
+            throw new IllegalArgumentException("Corrupt block container index");
+        }
+        final int indexEnd = FIXED_HEADER_SIZE + 8 * (blockCount + 1);
+
+        final byte[] out = new byte[(int) length];
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for (int i = 0; i < blockCount; i++) {
+            final int index = i;
+            final int start = blockStart(container, indexEnd, i);
+            final int outOffset = i * blockSize;
+            final int expected = (int) Math.min(blockSize, length - outOffset);
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    if (HuffmanBlock.decodedLength(container, start) != expected) {
+                        throw new IllegalArgumentException("Block has the wrong length");
+                    }
+                    decodeBlock(magic, container, start, out, outOffset);
+                    checkChecksum(container, indexEnd, index, checksum(out, outOffset, expected));
+                    return null;
+                }
+            });
+        }
+        runAll(pool, tasks);
+        return out;
+    }
+
+    /**
+     * Returns the uncompressed bytes [offset .. offset + length) of a container, decoding only the blocks that
+     * overlap the range. See BlockFileReader for range reads straight from a container file.
+     */
+    public static byte[] decompressRange(byte[] container, long offset, int length) {
+        int magic = (container.length < FIXED_HEADER_SIZE ? 0 : HuffmanBlock.readInt(container, 0));
+        if (!isContainer(magic)) {
+            throw new IllegalArgumentException("Not a block container");
+        }
+        int blockSize = HuffmanBlock.readInt(container, 4);
+        long total = readLong(container, 8);
+        int blockCount = HuffmanBlock.readInt(container, 16);
+        if (blockSize <= 0 || total < 0 || blockCount != (total + blockSize - 1) / blockSize
+                || FIXED_HEADER_SIZE + 8L * (blockCount + 1) > container.length) {
+            throw new IllegalArgumentException("Corrupt block container header");
+        }
+        if (offset < 0 || length < 0 || offset + length > total) {
+            throw new IndexOutOfBoundsException("Range [" + offset + ", " + (offset + length)
+                    + ") is outside of the " + total + " uncompressed bytes");
+        }
+        int indexEnd = FIXED_HEADER_SIZE + 8 * (blockCount + 1);
+
+        byte[] out = new byte[length];
+        byte[] scratch = null;
+        long end = offset + length;
+        for (int i = (int) (offset / blockSize); (long) i * blockSize < end; i++) {
+            int start = blockStart(container, indexEnd, i);
+            long blockStart = (long) i * blockSize;
+            int blockLength = (int) Math.min(blockSize, total - blockStart);
+            if (HuffmanBlock.decodedLength(container, start) != blockLength) {
+                throw new IllegalArgumentException("Block has the wrong length");
+            }
+            long from = Math.max(offset, blockStart);
+            long to = Math.min(end, blockStart + blockLength);
+            byte[] target = out;
+            int targetOffset = (int) (from - offset);
+            if (to - from != blockLength) {
+                // only part of this block is wanted, so decode all of it to the side first
+                if (scratch == null) {
+                    scratch = new byte[blockSize];
+                }
+                target = scratch;
+                targetOffset = 0;
+            }
+            decodeBlock(magic, container, start, target, targetOffset);
+            checkChecksum(container, indexEnd, i, checksum(target, targetOffset, blockLength));
+            if (target == scratch) {
+                System.arraycopy(scratch, (int) (from - blockStart), out, (int) (from - offset), (int) (to - from));
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Returns the index in container of block i, after checking that the block and its checksum lie between
+     * the end of the index (indexEnd) and the end of the container
+     */
+    private static int blockStart(byte[] container, int indexEnd, int i) {
+        long blockOffset = readLong(container, FIXED_HEADER_SIZE + 8 * i);
+        long blockEnd = readLong(container, FIXED_HEADER_SIZE + 8 * (i + 1));
+        if (blockOffset < 0 || blockEnd - blockOffset < 4 + CHECKSUM_SIZE || indexEnd + blockEnd > container.length) {
+            throw new IllegalArgumentException("Corrupt block container index");
+        }
+        return (int) (indexEnd + blockOffset);
+    }
+
+    /**
+     * Compares the checksum stored after block i of container with actual, the checksum of its decoded bytes
+     */
+    private static void checkChecksum(byte[] container, int indexEnd, int i, int actual) {
+        int end = (int) (indexEnd + readLong(container, FIXED_HEADER_SIZE + 8 * (i + 1)));
+        checkChecksum(HuffmanBlock.readInt(container, end - CHECKSUM_SIZE), actual, i);
+    }
+
+    /**
+     * Throws IllegalArgumentException if the checksum stored for block i does not match actual
+     */
+    static void checkChecksum(int stored, int actual, int i) {
+        if (stored != actual) {
+            throw new IllegalArgumentException("Checksum mismatch in block " + i + ", the data is corrupt");
+        }
+    }
+
+    /**
+     * Returns the CRC32C of data[offset .. offset + length)
+     */
+    static int checksum(byte[] data, int offset, int length) {
+        CRC32C crc = new CRC32C();
+        crc.update(data, offset, length);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Returns the CRC32C of length bytes of data starting at the absolute index offset. The position of data is
+     * not changed.
+     */
+    static int checksum(ByteBuffer data, int offset, int length) {
+        CRC32C crc = new CRC32C();
+        crc.update(data.slice(offset, length));
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Returns true if magic identifies one of the block container formats
+     */
+    static boolean isContainer(int magic) {
+        return magic == MAGIC || magic == INTERLEAVED_MAGIC || magic == ORDER1_MAGIC || magic == LZ77_MAGIC;
+    }
+
+    /**
+     * Compresses data[offset .. offset + length) into a block of the kind held by containers starting with magic
+     */
+    static byte[] encodeBlock(int magic, byte[] data, int offset, int length, int maxCodeLength) {
+        if (magic == INTERLEAVED_MAGIC) {
+            return InterleavedBlock.encode(data, offset, length, maxCodeLength);
+        } else if (magic == ORDER1_MAGIC) {
+            return Order1Block.encode(data, offset, length, maxCodeLength);
+        } else if (magic == LZ77_MAGIC) {
+            return Lz77Block.encode(data, offset, length, maxCodeLength);
+        }
+        return HuffmanBlock.encode(data, offset, length, maxCodeLength);
+    }
+
+    /**
+     * Decodes the block that starts at block[offset], of the kind held by containers starting with magic, into
+     * out starting at outOffset and returns the number of bytes written. Throws IllegalArgumentException if the
+     * block is corrupt, also when a decoder trips over it with an index or array size error.
+     */
+    static int decodeBlock(int magic, byte[] block, int offset, byte[] out, int outOffset) {
+        try {
+            if (magic == INTERLEAVED_MAGIC) {
+                return InterleavedBlock.decode(block, offset, out, outOffset);
+            } else if (magic == ORDER1_MAGIC) {
+                return Order1Block.decode(block, offset, out, outOffset);
+            } else if (magic == LZ77_MAGIC) {
+                return Lz77Block.decode(block, offset, out, outOffset);
+            }
+            return HuffmanBlock.decode(block, offset, out, outOffset);
+        } catch (IndexOutOfBoundsException | NegativeArraySizeException e) {
+            throw new IllegalArgumentException("Corrupt block", e);
+        }
+    }
+
+    /**
+     * Runs all tasks on pool and returns their results in order. Unchecked exceptions and errors thrown by a
+     * task are rethrown as they are, so an OutOfMemoryError stays one; checked exceptions are wrapped in an
+     * IllegalStateException.
+     */
+    static <T> List<T> runAll(ForkJoinPool pool, List<Callable<T>> tasks) {
+        List<T> results = new ArrayList<T>(tasks.size());
+        try {
+            for (Future<T> future : pool.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for blocks", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            // the pool may hand back a copy of the exception made on the waiting thread, with the original as
+            // its cause; rethrow the original so that callers see its message
+            if (cause.getCause() != null && cause.getCause().getClass() == cause.getClass()) {
+                cause = cause.getCause();
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+        return results;
+    }
+
+    static void writeLong(byte[] bytes, int offset, long value) {
+        HuffmanBlock.writeInt(bytes, offset, (int) (value >>> 32));
+        HuffmanBlock.writeInt(bytes, offset + 4, (int) value);
+    }
+
+    static long readLong(byte[] bytes, int offset) {
+        return ((long) HuffmanBlock.readInt(bytes, offset) << 32) | (HuffmanBlock.readInt(bytes, offset + 4) & 0xFFFFFFFFL);
+    }
+}
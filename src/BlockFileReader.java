@@ -0,0 +1,154 @@
+/**
+ * This class implements random access reads from a compressed BlockCodec container file (as written by
+ * BlockCodec and MappedFileCodec). Blocks always hold blockSize uncompressed bytes, so the block index in the
+ * container header maps uncompressed offsets to compressed offsets: byte i of the original data is in block
+ * i / blockSize, which starts at the stored offset of that block. A read only fetches and decodes the blocks
+ * that overlap the requested range, so a point read costs O(range + blockSize) instead of O(file). Use a
+ * smaller block size when compressing to make point reads cheaper, at some cost in compression.
+ *
+ * The header and index are read once when the file is opened and the file channel is kept open, so one
+ * reader can serve any number of reads, from any number of threads (reads use positional FileChannel reads).
+ */
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+public class BlockFileReader implements Closeable {
+
+    private final String fileName;
+    private final FileChannel channel;
+    private final int magic;
+    private final int blockSize;
+    private final long length;
+    private final long dataStart;
+    private final long[] offsets;
+
+    /**
+     * Opens fileName and reads its container header and block index
+     */
+    public BlockFileReader(String fileName) throws IOException {
+        this.fileName = fileName;
+        this.channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ);
+        try {
+            byte[] fixed = new byte[BlockCodec.FIXED_HEADER_SIZE];
+            readFully(ByteBuffer.wrap(fixed), 0);
+            this.magic = HuffmanBlock.readInt(fixed, 0);
+            if (!BlockCodec.isContainer(magic)) {
+                throw new IOException("Not a block container: " + fileName);
+            }
+            this.blockSize = HuffmanBlock.readInt(fixed, 4);
+            this.length = BlockCodec.readLong(fixed, 8);
+            int blockCount = HuffmanBlock.readInt(fixed, 16);
+            if (blockSize <= 0 || length < 0 || blockCount != (length + blockSize - 1) / blockSize
+                    || BlockCodec.FIXED_HEADER_SIZE + 8L * (blockCount + 1) > channel.size()) {
+                throw new IOException("Corrupt block container header: " + fileName);
+            }
+
+            byte[] index = new byte[8 * (blockCount + 1)];
+            readFully(ByteBuffer.wrap(index), BlockCodec.FIXED_HEADER_SIZE);
+            this.dataStart = BlockCodec.FIXED_HEADER_SIZE + index.length;
+            this.offsets = new long[blockCount + 1];
+            for (int i = 0; i <= blockCount; i++) {
+                offsets[i] = BlockCodec.readLong(index, 8 * i);
+                if (offsets[i] < (i == 0 ? 0 : offsets[i - 1] + 4 + BlockCodec.CHECKSUM_SIZE)
+                        || offsets[i] - (i == 0 ? 0 : offsets[i - 1]) > Integer.MAX_VALUE - 8
+                        || dataStart + offsets[i] > channel.size()) {
+                    throw new IOException("Corrupt block container index: " + fileName);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens fileName, returns the length uncompressed bytes starting at offset and closes the file again. Keep
+     * a BlockFileReader open instead when serving many reads from the same file.
+     */
+    public static byte[] decompressRange(String fileName, long offset, int length) throws IOException {
+        try (BlockFileReader reader = new BlockFileReader(fileName)) {
+            byte[] out = new byte[length];
+            reader.read(offset, out, 0, length);
+            return out;
+        }
+    }
+
+    /**
+     * Returns the total number of uncompressed bytes in the file
+     */
+    public long length() {
+        return length;
+    }
+
+    /**
+     * Returns the number of uncompressed bytes per block
+     */
+    public int blockSize() {
+        return blockSize;
+    }
+
+    /**
+     * Decodes the uncompressed bytes [offset .. offset + length) into out, starting at outOffset. Blocks that
+     * are covered completely are decoded straight into out; only the first and last block of the range go
+     * through a scratch array.
+     */
+    public void read(long offset, byte[] out, int outOffset, int length) throws IOException {
+        if (offset < 0 || length < 0 || offset + length > this.length) {
+            throw new IndexOutOfBoundsException("Range [" + offset + ", " + (offset + length)
+                    + ") is outside of the " + this.length + " uncompressed bytes");
+        }
+        if (outOffset < 0 || outOffset + length > out.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        long end = offset + length;
+        int first = (int) (offset / blockSize);
+        int last = (int) ((end + blockSize - 1) / blockSize);
+        for (int i = first; i < last; i++) {
+            long blockStart = (long) i * blockSize;
+            int blockLength = (int) Math.min(blockSize, this.length - blockStart);
+            byte[] block = new byte[(int) (offsets[i + 1] - offsets[i])];
+            readFully(ByteBuffer.wrap(block), dataStart + offsets[i]);
+
+            long from = Math.max(offset, blockStart);
+            long to = Math.min(end, blockStart + blockLength);
+            int target = (int) (outOffset + from - offset);
+            try {
+                if (HuffmanBlock.decodedLength(block, 0) != blockLength) {
+                    throw new IllegalArgumentException("Block has the wrong length");
+                }
+                int stored = HuffmanBlock.readInt(block, block.length - BlockCodec.CHECKSUM_SIZE);
+                if (to - from == blockLength) {
+                    BlockCodec.decodeBlock(magic, block, 0, out, target);
+                    BlockCodec.checkChecksum(stored, BlockCodec.checksum(out, target, blockLength), i);
+                } else {
+                    byte[] scratch = new byte[blockLength];
+                    BlockCodec.decodeBlock(magic, block, 0, scratch, 0);
+                    BlockCodec.checkChecksum(stored, BlockCodec.checksum(scratch, 0, blockLength), i);
+                    System.arraycopy(scratch, (int) (from - blockStart), out, target, (int) (to - from));
+                }
+            } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+                throw new IOException("Corrupt compressed block " + i + " in " + fileName, e);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position);
+            if (n < 0) {
+                throw new IOException("Unexpected end of file: " + fileName);
+            }
+            position += n;
+        }
+    }
+}
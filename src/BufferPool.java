@@ -0,0 +1,65 @@
+/**
+ * This class implements a small lock-free pool of reusable byte arrays. Buffers live in a fixed number of
+ * slots that are taken and returned with compare-and-set, so threads never block on each other and a busy
+ * server reuses the same few arrays instead of allocating fresh ones on every request. Unlike a ThreadLocal
+ * cache this also works with one virtual thread per request, where no thread lives long enough to reuse
+ * anything.
+ *
+ * When every slot is empty or holds a buffer that is too small, acquire allocates a new array; when every
+ * slot is full, release drops the buffer for the garbage collector.
+ */
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+public class BufferPool {
+
+    private final AtomicReferenceArray<byte[]> slots;
+
+    /**
+     * Creates a pool holding up to size buffers at once
+     */
+    public BufferPool(int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Pool size must be positive: " + size);
+        }
+        this.slots = new AtomicReferenceArray<byte[]>(size);
+    }
+
+    /**
+     * Returns a buffer of at least minSize bytes, taken from the pool if one is available. Its contents are
+     * undefined. Hand it back with release when done.
+     */
+    public byte[] acquire(int minSize) {
+        int n = slots.length();
+        int start = firstSlot();
+        for (int i = 0; i < n; i++) {
+            int slot = (start + i) % n;
+            byte[] buffer = slots.get(slot);
+            if (buffer != null && buffer.length >= minSize && slots.compareAndSet(slot, buffer, null)) {
+                return buffer;
+            }
+        }
+        // round up so the buffer can serve somewhat larger requests later
+        int size = (minSize <= 4096 ? 4096 : (minSize > (1 << 30) ? minSize : Integer.highestOneBit(minSize - 1) << 1));
+        return new byte[size];
+    }
+
+    /**
+     * Returns buffer to the pool. The caller must not use it afterwards.
+     */
+    public void release(byte[] buffer) {
+        int n = slots.length();
+        int start = firstSlot();
+        for (int i = 0; i < n; i++) {
+            int slot = (start + i) % n;
+            if (slots.get(slot) == null && slots.compareAndSet(slot, null, buffer)) {
+                return;
+            }
+        }
+    }
+
+    // threads start at different slots so they rarely contend for the same one
+    private int firstSlot() {
+        return (int) ((Thread.currentThread().getId() & Integer.MAX_VALUE) % slots.length());
+    }
+}
@@ -0,0 +1,148 @@
+/**
+ * This class implements canonical Huffman codes. A canonical code is fully determined by the length of the
+ * code for each symbol: codes are handed out in order of increasing length, and symbols with the same length
+ * get consecutive codes in increasing symbol order. That means only the lengths have to be stored, and both
+ * the encoder and the decoder can rebuild the codes in O(alphabet) time without creating any tree nodes.
+ *
+ * The header written by lengthsToByteArray uses the packed byte array layout of BitWriter and contains:
+ * the smallest and largest coded symbol (16 bits each), then for every symbol in that range a presence bit,
+ * followed by (length - 1) in 6 bits when the symbol is present. An empty code is stored with the
+ * largest symbol smaller than the smallest one.
+ */
+
+public class CanonicalCode {
+
+    private static final int SYMBOL_BITS = 16;
+    private static final int LENGTH_BITS = 6;
+
+    /**
+     * Assigns canonical codes to the given code lengths (indexed by symbol, 0 meaning the symbol is unused)
+     * and returns them as a CodeTable.
+     */
+    public static CodeTable fromLengths(int[] lengths) {
+        int maxLength = 0;
+        for (int length : lengths) {
+            if (length < 0 || length > CodeTable.MAX_CODE_LENGTH) {
+                throw new IllegalArgumentException("Unsupported code length: " + length);
+            }
+            maxLength = Math.max(maxLength, length);
+        }
+
+        // count how many codes there are of each length
+        long[] lengthCount = new long[maxLength + 1];
+        for (int length : lengths) {
+            if (length != 0) {
+                lengthCount[length]++;
+            }
+        }
+
+        // find the first code of each length, checking that the lengths describe a prefix-free code
+        long[] nextCode = new long[maxLength + 1];
+        long code = 0;
+        for (int length = 1; length <= maxLength; length++) {
+            code = (code + lengthCount[length - 1]) << 1;
+            if (length < 64 && code + lengthCount[length] > (1L << length)) {
+                throw new IllegalArgumentException("Code lengths do not describe a prefix-free code");
+            }
+            nextCode[length] = code;
+        }
+
+        long[] codes = new long[lengths.length];
+        for (int symbol = 0; symbol < lengths.length; symbol++) {
+            int length = lengths[symbol];
+            if (length != 0) {
+                codes[symbol] = nextCode[length]++;
+            }
+        }
+        return new CodeTable(codes, lengths);
+    }
+
+    /**
+     * Returns the canonical code that has the same code lengths as codingTree
+     */
+    public static CodeTable fromTree(HuffmanTree codingTree) {
+        return fromLengths(codingTree.getCodeLengths());
+    }
+
+    /**
+     * Returns the largest header lengthsToByteArray can produce for a code of the given number of symbols, so
+     * that readers can reject a corrupt header size before allocating it
+     */
+    public static int maxHeaderLength(int symbols) {
+        return 1 + (2 * SYMBOL_BITS + symbols * (LENGTH_BITS + 1) + 7) / 8;
+    }
+
+    /**
+     * Computes the compact header that stores the code length of each symbol
+     */
+    public static byte[] lengthsToByteArray(int[] lengths) {
+        BitWriter writer = new BitWriter();
+        writeLengths(writer, lengths);
+        return writer.toByteArray();
+    }
+
+    /**
+     * Takes the byte array output from lengthsToByteArray and returns the code lengths indexed by symbol
+     */
+    public static int[] lengthsFromByteArray(byte[] byteArray) {
+        return readLengths(new BitReader(byteArray));
+    }
+
+    /**
+     * Same as lengthsFromByteArray, for a header stored in byteArray[offset .. offset + length)
+     */
+    public static int[] lengthsFromByteArray(byte[] byteArray, int offset, int length) {
+        return readLengths(new BitReader(byteArray, offset, length));
+    }
+
+    /**
+     * Writes the code length header to writer, see the class comment for the layout
+     */
+    public static void writeLengths(BitWriter writer, int[] lengths) {
+        int first = -1;
+        int last = -1;
+        for (int symbol = 0; symbol < lengths.length; symbol++) {
+            if (lengths[symbol] != 0) {
+                if (first < 0) {
+                    first = symbol;
+                }
+                last = symbol;
+            }
+        }
+        if (first < 0) {
+            writer.writeBits(1, SYMBOL_BITS);
+            writer.writeBits(0, SYMBOL_BITS);
+            return;
+        }
+        if (last >= (1 << SYMBOL_BITS)) {
+            throw new IllegalArgumentException("Symbol too large for code length header: " + last);
+        }
+        writer.writeBits(first, SYMBOL_BITS);
+        writer.writeBits(last, SYMBOL_BITS);
+        for (int symbol = first; symbol <= last; symbol++) {
+            if (lengths[symbol] == 0) {
+                writer.writeBit(false);
+            } else {
+                writer.writeBits((1L << LENGTH_BITS) | (lengths[symbol] - 1), LENGTH_BITS + 1);
+            }
+        }
+    }
+
+    /**
+     * Reads a code length header written by writeLengths
+     */
+    public static int[] readLengths(BitReader reader) {
+        int first = (int) reader.readBits(SYMBOL_BITS);
+        int last = (int) reader.readBits(SYMBOL_BITS);
+        if (last < first) {
+            return new int[0];
+        }
+        int[] lengths = new int[last + 1];
+        for (int symbol = first; symbol <= last; symbol++) {
+            if (reader.readBit()) {
+                lengths[symbol] = (int) reader.readBits(LENGTH_BITS) + 1;
+            }
+        }
+        return lengths;
+    }
+}
@@ -0,0 +1,99 @@
+/**
+ * This class implements an immutable lookup table of Huffman codes indexed by symbol. Each code is stored as
+ * a long holding its bits (most significant bit first) together with its length, so encoders can emit a
+ * whole code with a single BitWriter.writeBits call instead of walking a list of booleans.
+ */
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+public class CodeTable {
+
+    /** Longest code that fits in the long used to hold each code */
+    public static final int MAX_CODE_LENGTH = 64;
+
+    private final long[] codes;
+    private final int[] lengths;
+
+    /**
+     * Creates a table from parallel arrays indexed by symbol. A length of 0 means the symbol has no code.
+     */
+    public CodeTable(long[] codes, int[] lengths) {
+        if (codes.length != lengths.length) {
+            throw new IllegalArgumentException("codes and lengths must have the same size");
+        }
+        for (int length : lengths) {
+            if (length < 0 || length > MAX_CODE_LENGTH) {
+                throw new IllegalArgumentException("Unsupported code length: " + length);
+            }
+        }
+        this.codes = codes.clone();
+        this.lengths = lengths.clone();
+    }
+
+    /**
+     * Builds a table from the encodings returned by HuffmanTree.getEncodings
+     */
+    public static CodeTable fromEncodings(HashMap<Character, ArrayList<Boolean>> encodings) {
+        int size = 0;
+        for (Character c : encodings.keySet()) {
+            size = Math.max(size, c + 1);
+        }
+        long[] codes = new long[size];
+        int[] lengths = new int[size];
+        for (Map.Entry<Character, ArrayList<Boolean>> entry : encodings.entrySet()) {
+            ArrayList<Boolean> bits = entry.getValue();
+            if (bits.size() > MAX_CODE_LENGTH) {
+                throw new IllegalArgumentException("Code for " + entry.getKey() + " is longer than "
+                        + MAX_CODE_LENGTH + " bits");
+            }
+            long code = 0;
+            for (Boolean bit : bits) {
+                code = (code << 1) | (bit ? 1 : 0);
+            }
+            codes[entry.getKey()] = code;
+            lengths[entry.getKey()] = bits.size();
+        }
+        return new CodeTable(codes, lengths);
+    }
+
+    /**
+     * Returns one more than the largest symbol this table can hold
+     */
+    public int size() {
+        return lengths.length;
+    }
+
+    /**
+     * Returns true if symbol has a code in this table
+     */
+    public boolean contains(int symbol) {
+        return symbol >= 0 && symbol < lengths.length && lengths[symbol] != 0;
+    }
+
+    /**
+     * Returns the bits of the code for symbol, right aligned
+     */
+    public long code(int symbol) {
+        return codes[symbol];
+    }
+
+    /**
+     * Returns the number of bits in the code for symbol, or 0 if the symbol has no code
+     */
+    public int length(int symbol) {
+        return lengths[symbol];
+    }
+
+    /**
+     * Returns the length of the longest code in the table
+     */
+    public int maxLength() {
+        int max = 0;
+        for (int length : lengths) {
+            max = Math.max(max, length);
+        }
+        return max;
+    }
+}
@@ -0,0 +1,67 @@
+/**
+ * This interface receives measurements from the codec: bytes going in and out, the time spent in each phase,
+ * dictionary cache lookups and how close the codes come to the entropy of the data they code. The codec
+ * reports to whatever implementation is installed with Metrics.install; by default that is NOOP, which
+ * ignores everything. Implementations are called from many threads at once and must be thread safe and
+ * cheap, since they are called on the hot paths.
+ */
+
+public interface CodecMetrics {
+
+    /**
+     * The phases of compressing and decompressing
+     */
+    enum Phase {
+        /** Counting symbol frequencies */
+        COUNT,
+        /** Building the tree or the code lengths and codes */
+        BUILD,
+        /** Encoding symbols into bits */
+        ENCODE,
+        /** Writing the tree or the code length header */
+        SERIALIZE,
+        /** Decoding bits back into symbols */
+        DECODE
+    }
+
+    /** Metrics that ignore every measurement */
+    CodecMetrics NOOP = new CodecMetrics() {
+        @Override
+        public void recordPhase(Phase phase, long nanos) {
+        }
+
+        @Override
+        public void recordBytes(long bytesIn, long bytesOut) {
+        }
+
+        @Override
+        public void recordCacheLookup(boolean hit) {
+        }
+
+        @Override
+        public void recordCode(long symbols, long codeBits, double entropyBits) {
+        }
+    };
+
+    /**
+     * Records that one run of phase took nanos nanoseconds
+     */
+    void recordPhase(Phase phase, long nanos);
+
+    /**
+     * Records that bytesIn bytes (or symbols) were compressed into bytesOut bytes, or for decompression, that
+     * bytesIn compressed bytes were decompressed into bytesOut bytes
+     */
+    void recordBytes(long bytesIn, long bytesOut);
+
+    /**
+     * Records a lookup in a table or dictionary cache
+     */
+    void recordCacheLookup(boolean hit);
+
+    /**
+     * Records that symbols symbols were coded in codeBits bits, where an ideal entropy coder for the same
+     * frequencies would need entropyBits bits
+     */
+    void recordCode(long symbols, long codeBits, double entropyBits);
+}
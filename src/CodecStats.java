@@ -0,0 +1,174 @@
+/**
+ * This class implements CodecMetrics with counters that add up every measurement. The counters are LongAdders,
+ * so threads recording at the same time do not contend on a single memory location. The totals can be read
+ * with the getters or, after registerMBean, from any JMX client such as jconsole. Usage:
+ *
+ *   CodecStats stats = new CodecStats();
+ *   stats.registerMBean();
+ *   Metrics.install(stats);
+ */
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+public class CodecStats implements CodecMetrics, CodecStatsMBean {
+
+    /** Name the MBean is registered under by registerMBean() */
+    public static final String OBJECT_NAME = "huffman:type=CodecStats";
+
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    private final LongAdder[] calls = newAdders(Phase.values().length);
+    private final LongAdder[] nanos = newAdders(Phase.values().length);
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+    private final LongAdder symbols = new LongAdder();
+    private final LongAdder codeBits = new LongAdder();
+    private final DoubleAdder entropyBits = new DoubleAdder();
+
+    /**
+     * Registers these stats with the platform MBean server under OBJECT_NAME
+     */
+    public void registerMBean() throws JMException {
+        registerMBean(OBJECT_NAME);
+    }
+
+    /**
+     * Registers these stats with the platform MBean server under name, e.g. to keep several codecs apart
+     */
+    public void registerMBean(String name) throws JMException {
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(name));
+    }
+
+    @Override
+    public void recordPhase(Phase phase, long elapsed) {
+        calls[phase.ordinal()].increment();
+        nanos[phase.ordinal()].add(elapsed);
+    }
+
+    @Override
+    public void recordBytes(long in, long out) {
+        bytesIn.add(in);
+        bytesOut.add(out);
+    }
+
+    @Override
+    public void recordCacheLookup(boolean hit) {
+        (hit ? cacheHits : cacheMisses).increment();
+    }
+
+    @Override
+    public void recordCode(long count, long bits, double entropy) {
+        symbols.add(count);
+        codeBits.add(bits);
+        entropyBits.add(entropy);
+    }
+
+    @Override
+    public long getBytesIn() {
+        return bytesIn.sum();
+    }
+
+    @Override
+    public long getBytesOut() {
+        return bytesOut.sum();
+    }
+
+    @Override
+    public long getCountCalls() {
+        return calls[Phase.COUNT.ordinal()].sum();
+    }
+
+    @Override
+    public long getCountNanos() {
+        return nanos[Phase.COUNT.ordinal()].sum();
+    }
+
+    @Override
+    public long getBuildCalls() {
+        return calls[Phase.BUILD.ordinal()].sum();
+    }
+
+    @Override
+    public long getBuildNanos() {
+        return nanos[Phase.BUILD.ordinal()].sum();
+    }
+
+    @Override
+    public long getEncodeCalls() {
+        return calls[Phase.ENCODE.ordinal()].sum();
+    }
+
+    @Override
+    public long getEncodeNanos() {
+        return nanos[Phase.ENCODE.ordinal()].sum();
+    }
+
+    @Override
+    public long getSerializeCalls() {
+        return calls[Phase.SERIALIZE.ordinal()].sum();
+    }
+
+    @Override
+    public long getSerializeNanos() {
+        return nanos[Phase.SERIALIZE.ordinal()].sum();
+    }
+
+    @Override
+    public long getDecodeCalls() {
+        return calls[Phase.DECODE.ordinal()].sum();
+    }
+
+    @Override
+    public long getDecodeNanos() {
+        return nanos[Phase.DECODE.ordinal()].sum();
+    }
+
+    @Override
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    @Override
+    public long getCacheMisses() {
+        return cacheMisses.sum();
+    }
+
+    @Override
+    public double getAverageCodeLength() {
+        long count = symbols.sum();
+        return count == 0 ? 0 : (double) codeBits.sum() / count;
+    }
+
+    @Override
+    public double getAverageEntropy() {
+        long count = symbols.sum();
+        return count == 0 ? 0 : entropyBits.sum() / count;
+    }
+
+    @Override
+    public void reset() {
+        bytesIn.reset();
+        bytesOut.reset();
+        for (int i = 0; i < calls.length; i++) {
+            calls[i].reset();
+            nanos[i].reset();
+        }
+        cacheHits.reset();
+        cacheMisses.reset();
+        symbols.reset();
+        codeBits.reset();
+        entropyBits.reset();
+    }
+
+    private static LongAdder[] newAdders(int count) {
+        LongAdder[] adders = new LongAdder[count];
+        for (int i = 0; i < count; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+}
@@ -0,0 +1,43 @@
+/**
+ * This interface is the JMX management interface of CodecStats
+ */
+
+public interface CodecStatsMBean {
+
+    long getBytesIn();
+
+    long getBytesOut();
+
+    long getCountCalls();
+
+    long getCountNanos();
+
+    long getBuildCalls();
+
+    long getBuildNanos();
+
+    long getEncodeCalls();
+
+    long getEncodeNanos();
+
+    long getSerializeCalls();
+
+    long getSerializeNanos();
+
+    long getDecodeCalls();
+
+    long getDecodeNanos();
+
+    long getCacheHits();
+
+    long getCacheMisses();
+
+    /** Average number of bits per coded symbol */
+    double getAverageCodeLength();
+
+    /** Average entropy in bits per coded symbol, the lower bound for getAverageCodeLength */
+    double getAverageEntropy();
+
+    /** Sets every counter back to zero */
+    void reset();
+}
@@ -0,0 +1,84 @@
+/**
+ * This class implements an in-process cache of HuffmanDictionary objects keyed by dictionary id, with least
+ * recently used eviction once more than capacity dictionaries are held. Dictionaries that are not cached are
+ * fetched through a Loader (e.g. from disk or a config service) and kept, with their decoder tables already
+ * built, for the following messages. All methods are thread safe.
+ */
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class DictionaryCache {
+
+    /**
+     * Fetches the serialized form (see HuffmanDictionary.toByteArray) of a dictionary that is not cached
+     */
+    public interface Loader {
+        /**
+         * Returns the saved dictionary with the given id, or null if there is none
+         */
+        byte[] load(int id);
+    }
+
+    private final Loader loader;
+    private final LinkedHashMap<Integer, HuffmanDictionary> dictionaries;
+
+    /**
+     * Creates a cache holding at most capacity dictionaries. loader may be null if every dictionary is put
+     * into the cache by hand.
+     */
+    public DictionaryCache(final int capacity, Loader loader) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.loader = loader;
+        this.dictionaries = new LinkedHashMap<Integer, HuffmanDictionary>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, HuffmanDictionary> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Adds dictionary to the cache, replacing any cached dictionary with the same id
+     */
+    public synchronized void put(HuffmanDictionary dictionary) {
+        dictionaries.put(dictionary.id(), dictionary);
+    }
+
+    /**
+     * Returns the dictionary with the given id, loading it if it is not cached. Throws
+     * IllegalArgumentException if it is neither cached nor known to the loader.
+     */
+    public synchronized HuffmanDictionary get(int id) {
+        HuffmanDictionary dictionary = dictionaries.get(id);
+        Metrics.get().recordCacheLookup(dictionary != null);
+        if (dictionary == null) {
+            byte[] saved = (loader == null ? null : loader.load(id));
+            if (saved == null) {
+                throw new IllegalArgumentException("Unknown dictionary: " + id);
+            }
+            dictionary = HuffmanDictionary.fromByteArray(saved);
+            if (dictionary.id() != id) {
+                throw new IllegalArgumentException("Loader returned dictionary " + dictionary.id() + " for " + id);
+            }
+            dictionaries.put(id, dictionary);
+        }
+        return dictionary;
+    }
+
+    /**
+     * Returns the number of cached dictionaries
+     */
+    public synchronized int size() {
+        return dictionaries.size();
+    }
+
+    /**
+     * Decompresses a message compressed with any dictionary known to this cache
+     */
+    public byte[] decompress(byte[] compressed) {
+        return get(HuffmanDictionary.messageId(compressed)).decompress(compressed);
+    }
+}
@@ -0,0 +1,238 @@
+/**
+ * This class implements an immutable Huffman tree stored as flat parallel int arrays instead of linked
+ * HuffmanTree objects. Node i is a leaf if left[i] is -1, in which case symbol[i] holds its symbol; otherwise
+ * left[i] and right[i] are the indexes of its children. There are no per-node objects, the arrays are laid out
+ * contiguously and nothing is ever modified after construction, so one tree can be used by any number of
+ * encoders and decoders on different threads at once.
+ *
+ * toHuffmanTree gives a legacy HuffmanTree view of the same tree for code that still works on HuffmanTrees.
+ */
+
+import java.util.Stack;
+
+public class FlatHuffmanTree {
+
+    private final int[] left;
+    private final int[] right;
+    private final int[] symbol;
+    private final int root;
+
+    private FlatHuffmanTree(int[] left, int[] right, int[] symbol, int root) {
+        this.left = left;
+        this.right = right;
+        this.symbol = symbol;
+        this.root = root;
+    }
+
+    /**
+     * Builds the Huffman tree for a table of frequencies indexed by symbol with the linear time two queue
+     * construction (see HuffmanBuilder). The nodes keep HuffmanBuilder's numbering. A single used symbol gives
+     * a tree that is just a leaf, and null is returned if no symbol has a non-zero frequency.
+     */
+    public static FlatHuffmanTree fromFrequencies(long[] frequencies) {
+        int[] symbols = HuffmanBuilder.sortedSymbols(frequencies);
+        int n = symbols.length;
+        if (n == 0) {
+            return null;
+        }
+        int[] left = new int[2 * n - 1];
+        int[] right = new int[2 * n - 1];
+        int[] symbol = new int[2 * n - 1];
+        for (int i = 0; i < n; i++) {
+            left[i] = -1;
+            right[i] = -1;
+            symbol[i] = symbols[i];
+        }
+        if (n > 1) {
+            int[] children = HuffmanBuilder.merge(HuffmanBuilder.weights(frequencies, symbols));
+            for (int k = 0; k < n - 1; k++) {
+                left[n + k] = children[2 * k];
+                right[n + k] = children[2 * k + 1];
+                symbol[n + k] = -1;
+            }
+        }
+        return new FlatHuffmanTree(left, right, symbol, 2 * n - 2);
+    }
+
+    /**
+     * Copies the shape and characters of a HuffmanTree into a flat tree
+     */
+    public static FlatHuffmanTree fromHuffmanTree(HuffmanTree tree) {
+        int count = 0;
+        Stack<HuffmanTree> nodes = new Stack<HuffmanTree>();
+        nodes.push(tree);
+        while (!nodes.isEmpty()) {
+            HuffmanTree next = nodes.pop();
+            count++;
+            if (next.getLeft() != null) {
+                nodes.push(next.getLeft());
+            }
+            if (next.getRight() != null) {
+                nodes.push(next.getRight());
+            }
+        }
+
+        int[] left = new int[count];
+        int[] right = new int[count];
+        int[] symbol = new int[count];
+
+        // nodes are numbered in pre-order, so the root is node 0
+        Stack<Integer> parents = new Stack<Integer>();
+        Stack<Boolean> isRightChild = new Stack<Boolean>();
+        nodes.push(tree);
+        parents.push(-1);
+        isRightChild.push(false);
+        int next = 0;
+        while (!nodes.isEmpty()) {
+            HuffmanTree node = nodes.pop();
+            int parent = parents.pop();
+            boolean rightChild = isRightChild.pop();
+            int index = next++;
+            if (parent >= 0) {
+                if (rightChild) {
+                    right[parent] = index;
+                } else {
+                    left[parent] = index;
+                }
+            }
+            if (node.getLeft() == null && node.getRight() == null) {
+                left[index] = -1;
+                right[index] = -1;
+                symbol[index] = node.getValue();
+            } else {
+                if (node.getLeft() == null || node.getRight() == null) {
+                    throw new IllegalArgumentException("Huffman tree has a node with a single child");
+                }
+                symbol[index] = -1;
+                nodes.push(node.getRight());
+                parents.push(index);
+                isRightChild.push(true);
+                nodes.push(node.getLeft());
+                parents.push(index);
+                isRightChild.push(false);
+            }
+        }
+        return new FlatHuffmanTree(left, right, symbol, 0);
+    }
+
+    /**
+     * Returns the index of the root node
+     */
+    public int root() {
+        return root;
+    }
+
+    /**
+     * Returns the number of nodes in the tree
+     */
+    public int size() {
+        return left.length;
+    }
+
+    public boolean isLeaf(int node) {
+        return left[node] < 0;
+    }
+
+    /**
+     * Returns the left child of an internal node
+     */
+    public int left(int node) {
+        return left[node];
+    }
+
+    /**
+     * Returns the right child of an internal node
+     */
+    public int right(int node) {
+        return right[node];
+    }
+
+    /**
+     * Returns the symbol of a leaf
+     */
+    public int symbol(int node) {
+        return symbol[node];
+    }
+
+    /**
+     * Returns the code length of each symbol, indexed by symbol (0 for symbols not in the tree). A tree that
+     * is a single leaf gets a 1 bit code.
+     */
+    public int[] codeLengths() {
+        CodeTable table = codeTable();
+        int[] lengths = new int[table.size()];
+        for (int s = 0; s < lengths.length; s++) {
+            lengths[s] = table.length(s);
+        }
+        return lengths;
+    }
+
+    /**
+     * Returns the codes of this tree (0 for a left branch, 1 for a right branch) as a CodeTable. A tree that
+     * is a single leaf gets the 1 bit code 0.
+     */
+    public CodeTable codeTable() {
+        int maxSymbol = -1;
+        for (int s : symbol) {
+            maxSymbol = Math.max(maxSymbol, s);
+        }
+        long[] codes = new long[maxSymbol + 1];
+        int[] lengths = new int[maxSymbol + 1];
+
+        if (isLeaf(root)) {
+            lengths[symbol[root]] = 1;
+            return new CodeTable(codes, lengths);
+        }
+
+        // iterative pre-order walk with the code and depth of each pending node kept in parallel arrays
+        int[] stack = new int[left.length];
+        long[] stackCodes = new long[left.length];
+        int[] stackDepths = new int[left.length];
+        int top = 0;
+        stack[top] = root;
+        stackCodes[top] = 0;
+        stackDepths[top] = 0;
+        top++;
+        while (top > 0) {
+            top--;
+            int node = stack[top];
+            long code = stackCodes[top];
+            int depth = stackDepths[top];
+            if (isLeaf(node)) {
+                codes[symbol[node]] = code;
+                lengths[symbol[node]] = depth;
+                continue;
+            }
+            if (depth >= CodeTable.MAX_CODE_LENGTH) {
+                throw new IllegalArgumentException("Tree is deeper than " + CodeTable.MAX_CODE_LENGTH + " levels");
+            }
+            stack[top] = right[node];
+            stackCodes[top] = (code << 1) | 1;
+            stackDepths[top] = depth + 1;
+            top++;
+            stack[top] = left[node];
+            stackCodes[top] = code << 1;
+            stackDepths[top] = depth + 1;
+            top++;
+        }
+        return new CodeTable(codes, lengths);
+    }
+
+    /**
+     * Returns a HuffmanTree with the same shape and characters, for use with the legacy HuffmanTree methods.
+     * Frequencies are not kept in the flat tree, so they are all 0 in the view. All symbols must be chars.
+     */
+    public HuffmanTree toHuffmanTree() {
+        return toHuffmanTree(root);
+    }
+
+    private HuffmanTree toHuffmanTree(int node) {
+        if (isLeaf(node)) {
+            if (symbol[node] > Character.MAX_VALUE) {
+                throw new IllegalArgumentException("Symbol is not a char: " + symbol[node]);
+            }
+            return new HuffmanTree((char) symbol[node], 0);
+        }
+        return HuffmanTree.merge(toHuffmanTree(left[node]), toHuffmanTree(right[node]));
+    }
+}
@@ -0,0 +1,222 @@
+/**
+ * This class implements allocation-free frequency counting over primitive arrays. Symbols are counted into
+ * plain int[] tables instead of a HashMap, so there is no boxing and no hashing per input symbol. Large inputs
+ * are split into chunks that are counted in parallel on a ForkJoinPool and the per-chunk tables are merged at
+ * the end. The results are long[] tables indexed by symbol that HuffmanCode.generateCodingTree accepts directly.
+ *
+ * Bytes are counted into four interleaved sub-tables, one for each position modulo 4, that are summed at the end.
+ * With a single table, runs of the same byte make every increment wait for the store of the one before it to
+ * the same counter; with four tables consecutive increments go to different memory locations and overlap.
+ */
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+public class Histogram {
+
+    /** Inputs are split into chunks of this many symbols for parallel counting */
+    public static final int CHUNK_SIZE = 1 << 20;
+
+    // bytes copied at once from a direct buffer onto the heap
+    private static final int COPY_SIZE = 1 << 16;
+
+    /**
+     * Counts data[offset .. offset + length) on the calling thread and returns a table of 256 counts indexed
+     * by unsigned byte value
+     */
+    public static long[] ofBytes(byte[] data, int offset, int length) {
+        long[] counts = new long[256];
+        addBytes(data, offset, length, counts);
+        return counts;
+    }
+
+    /**
+     * Counts all of data, splitting it into chunks that are counted in parallel on pool
+     */
+    public static long[] ofBytes(final byte[] data, ForkJoinPool pool) {
+        return pool.invoke(new ChunkTask(new Counter() {
+            @Override
+            public void count(int from, int to, long[] counts) {
+                addBytes(data, from, to - from, counts);
+            }
+        }, 256, 0, data.length));
+    }
+
+    /**
+     * Counts the remaining bytes of buffer (between its position and limit) in parallel on pool. The
+     * position of buffer is not changed and direct buffers are read without copying them onto the heap.
+     */
+    public static long[] ofBytes(final ByteBuffer buffer, ForkJoinPool pool) {
+        final int base = buffer.position();
+        return pool.invoke(new ChunkTask(new Counter() {
+            @Override
+            public void count(int from, int to, long[] counts) {
+                addBytes(buffer, base + from, to - from, counts);
+            }
+        }, 256, 0, buffer.remaining()));
+    }
+
+    /**
+     * Counts the characters of data in parallel on pool and returns a table of 65536 counts indexed by
+     * character
+     */
+    public static long[] ofChars(final char[] data, ForkJoinPool pool) {
+        return pool.invoke(new ChunkTask(new Counter() {
+            @Override
+            public void count(int from, int to, long[] counts) {
+                int[] local = new int[65536];
+                for (int i = from; i < to; i++) {
+                    local[data[i]]++;
+                }
+                for (int c = 0; c < local.length; c++) {
+                    counts[c] += local[c];
+                }
+            }
+        }, 65536, 0, data.length));
+    }
+
+    /**
+     * Counts the characters of charArray on the calling thread and returns a table of counts indexed by
+     * character. The table has 256 entries while all characters fit in a byte (the usual case, as readFile
+     * produces one character per byte) and 65536 otherwise, so that counting small inputs does not clear and
+     * scan the full character range.
+     */
+    public static long[] ofCharacters(ArrayList<Character> charArray) {
+        int[] local = new int[256];
+        for (int i = 0; i < charArray.size(); i++) {
+            char c = charArray.get(i);
+            if (c >= local.length) {
+                local = Arrays.copyOf(local, 65536);
+            }
+            local[c]++;
+        }
+        long[] counts = new long[local.length];
+        for (int c = 0; c < local.length; c++) {
+            counts[c] = local[c];
+        }
+        return counts;
+    }
+
+    /**
+     * Counts the byte pairs of data[offset .. offset + length) and returns a 256 x 256 table where
+     * [previous][b] is the number of times byte b follows byte previous. The first byte is counted as
+     * following byte 0.
+     */
+    public static long[][] ofBytePairs(byte[] data, int offset, int length) {
+        long[][] counts = new long[256][256];
+        int[] local = new int[65536];
+        int previous = 0;
+        int end = offset + length;
+        for (int chunk = offset; chunk < end; chunk += CHUNK_SIZE) {
+            int chunkEnd = Math.min(end, chunk + CHUNK_SIZE);
+            for (int i = chunk; i < chunkEnd; i++) {
+                int b = data[i] & 0xFF;
+                local[(previous << 8) | b]++;
+                previous = b;
+            }
+            // flush every chunk so the int counters cannot overflow
+            for (int pair = 0; pair < local.length; pair++) {
+                counts[pair >>> 8][pair & 0xFF] += local[pair];
+                local[pair] = 0;
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Adds the counts of data[offset .. offset + length) to counts, which must have 256 entries
+     */
+    static void addBytes(byte[] data, int offset, int length, long[] counts) {
+        int[] local = new int[4 * 256];
+        int end = offset + length;
+        int i = offset;
+        for (; i + 4 <= end; i += 4) {
+            local[data[i] & 0xFF]++;
+            local[256 + (data[i + 1] & 0xFF)]++;
+            local[512 + (data[i + 2] & 0xFF)]++;
+            local[768 + (data[i + 3] & 0xFF)]++;
+        }
+        for (; i < end; i++) {
+            local[data[i] & 0xFF]++;
+        }
+        addSubTables(local, counts);
+    }
+
+    /**
+     * Adds the counts of length bytes of buffer, starting at the absolute index offset, to counts. Heap
+     * buffers are counted in place; direct and mapped buffers are copied in chunks of COPY_SIZE bytes with
+     * bulk gets, which is much faster than a get per byte, and then counted by the byte[] loop above.
+     */
+    static void addBytes(ByteBuffer buffer, int offset, int length, long[] counts) {
+        if (buffer.hasArray()) {
+            addBytes(buffer.array(), buffer.arrayOffset() + offset, length, counts);
+            return;
+        }
+        byte[] chunk = new byte[Math.min(length, COPY_SIZE)];
+        for (int done = 0; done < length; done += chunk.length) {
+            int n = Math.min(chunk.length, length - done);
+            buffer.get(offset + done, chunk, 0, n);
+            addBytes(chunk, 0, n, counts);
+        }
+    }
+
+    /**
+     * Adds the four 256 entry sub-tables of local to counts
+     */
+    private static void addSubTables(int[] local, long[] counts) {
+        for (int b = 0; b < 256; b++) {
+            counts[b] += (long) local[b] + local[256 + b] + local[512 + b] + local[768 + b];
+        }
+    }
+
+    /**
+     * Adds the counts of the symbols in [from, to) of some input to counts
+     */
+    private interface Counter {
+        void count(int from, int to, long[] counts);
+    }
+
+    /**
+     * Splits the range [from, to) in half until it is at most CHUNK_SIZE long, counts each chunk into its own
+     * table and merges the tables on the way back up. Chunks are at most CHUNK_SIZE symbols, so the int
+     * counters used by the Counters cannot overflow.
+     */
+    private static class ChunkTask extends RecursiveTask<long[]> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Counter counter;
+        private final int tableSize;
+        private final int from;
+        private final int to;
+
+        ChunkTask(Counter counter, int tableSize, int from, int to) {
+            this.counter = counter;
+            this.tableSize = tableSize;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected long[] compute() {
+            if (to - from <= CHUNK_SIZE) {
+                long[] counts = new long[tableSize];
+                counter.count(from, to, counts);
+                return counts;
+            }
+            int middle = from + (to - from) / 2;
+            ChunkTask left = new ChunkTask(counter, tableSize, from, middle);
+            ChunkTask right = new ChunkTask(counter, tableSize, middle, to);
+            left.fork();
+            long[] counts = right.compute();
+            long[] leftCounts = left.join();
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] += leftCounts[i];
+            }
+            return counts;
+        }
+    }
+}
@@ -0,0 +1,337 @@
+/**
+ * This class implements a benchmark harness for the main steps of the codec: frequency counting, tree
+ * building, code generation, encoding, tree serialization and decoding. Every step runs over synthetic
+ * corpora of several sizes and entropies (uniform, Zipfian, English-like text and binary records) and reports
+ * operations per second, throughput in MB/s of input and the number of bytes allocated per operation, so
+ * regressions show up before deployment.
+ *
+ * Each benchmark is warmed up for WARMUP_ITERATIONS and then measured for MEASURE_ITERATIONS, each lasting
+ * about ITERATION_MILLIS. Usage:
+ *
+ *   java HuffmanBenchmark [--sizes 65536,1048576] [--corpora uniform,zipf] [--filter decode]
+ */
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+public class HuffmanBenchmark {
+
+    public static final int WARMUP_ITERATIONS = 3;
+    public static final int MEASURE_ITERATIONS = 5;
+    public static final long ITERATION_MILLIS = 500;
+
+    private static final String[] CORPORA = {"uniform", "zipf", "english", "binary"};
+    private static final int[] SIZES = {1 << 16, 1 << 20, 1 << 24};
+
+    // keeps results alive so the JIT cannot remove the benchmarked work
+    private static volatile Object sink;
+
+    /**
+     * A single benchmarked operation. run is called repeatedly and must do one complete operation.
+     */
+    interface Operation {
+        void run();
+    }
+
+    public static void main(String[] args) {
+        String[] corpora = CORPORA;
+        int[] sizes = SIZES;
+        String filter = "";
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (args[i].equals("--sizes")) {
+                String[] parts = args[i + 1].split(",");
+                sizes = new int[parts.length];
+                for (int j = 0; j < parts.length; j++) {
+                    sizes[j] = Integer.parseInt(parts[j].trim());
+                }
+            } else if (args[i].equals("--corpora")) {
+                corpora = args[i + 1].split(",");
+            } else if (args[i].equals("--filter")) {
+                filter = args[i + 1];
+            } else {
+                throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+
+        System.out.println(String.format(Locale.ROOT, "%-40s %-8s %10s %12s %12s %14s",
+                "benchmark", "corpus", "size", "ops/s", "MB/s", "alloc B/op"));
+        for (String corpus : corpora) {
+            for (int size : sizes) {
+                runCorpus(corpus, size, filter);
+            }
+        }
+    }
+
+    private static void runCorpus(String corpus, final int size, String filter) {
+        final byte[] bytes = generateCorpus(corpus, size, new Random(42));
+        final ArrayList<Character> chars = new ArrayList<Character>(size);
+        for (byte b : bytes) {
+            chars.add((char) (b & 0xFF));
+        }
+
+        final HashMap<Character, Integer> freq = HuffmanCode.frequenciesFromArray(chars);
+        final long[] counts = Histogram.ofBytes(bytes, 0, bytes.length);
+        final HuffmanTree tree = HuffmanCode.generateCodingTree(freq);
+        final HashMap<Character, ArrayList<Boolean>> encodings = tree.getEncodings();
+        final CodeTable table = CodeTable.fromEncodings(encodings);
+        final byte[] encoded = HuffmanCode.encodeCharactersToByteArray(chars, table);
+        final byte[] treeBytes = HuffmanTree.huffmanTreeToByteArray(tree);
+        final String bitString = bitString(encoded);
+        final HuffmanDecoder decoder = new HuffmanDecoder(table);
+        final char[] decoded = new char[decoder.maxDecodedLength(encoded)];
+        final HuffmanCodec codec = HuffmanCodec.fromFrequencies(counts);
+        final byte[] codecBuffer = new byte[codec.maxCompressedLength(size)];
+        final int codecLength = codec.compress(bytes, 0, size, codecBuffer, 0);
+        final byte[] codecOut = new byte[size];
+        final ByteBuffer directIn = ByteBuffer.allocateDirect(size).put(bytes);
+        final ByteBuffer directCompressed = ByteBuffer.allocateDirect(codec.maxCompressedLength(size));
+        final ByteBuffer directOut = ByteBuffer.allocateDirect(size);
+        directIn.flip();
+        codec.compress(directIn.duplicate(), directCompressed.duplicate());
+        directCompressed.limit(codecLength);
+        final byte[] block = HuffmanBlock.encode(bytes, 0, size, InterleavedBlock.MAX_CODE_LENGTH);
+        final byte[] interleavedBlock = InterleavedBlock.encode(bytes, 0, size);
+        final byte[] blockOut = new byte[size];
+
+        List<String> names = new ArrayList<String>();
+        List<Operation> operations = new ArrayList<Operation>();
+
+        names.add("HuffmanCode.frequenciesFromArray");
+        operations.add(new Operation() {
+            public void run() {
+                sink = HuffmanCode.frequenciesFromArray(chars);
+            }
+        });
+        names.add("HuffmanCode.generateCodingTree");
+        operations.add(new Operation() {
+            public void run() {
+                sink = HuffmanCode.generateCodingTree(freq);
+            }
+        });
+        names.add("Histogram.ofBytes");
+        operations.add(new Operation() {
+            public void run() {
+                sink = Histogram.ofBytes(bytes, 0, size);
+            }
+        });
+        names.add("FlatHuffmanTree.fromFrequencies");
+        operations.add(new Operation() {
+            public void run() {
+                sink = FlatHuffmanTree.fromFrequencies(counts);
+            }
+        });
+        names.add("HuffmanTree.getEncodings");
+        operations.add(new Operation() {
+            public void run() {
+                sink = tree.getEncodings();
+            }
+        });
+        names.add("HuffmanCode.encodeCharacters");
+        operations.add(new Operation() {
+            public void run() {
+                sink = HuffmanCode.encodeCharacters(chars, encodings);
+            }
+        });
+        names.add("HuffmanCode.encodeCharactersToByteArray");
+        operations.add(new Operation() {
+            public void run() {
+                sink = HuffmanCode.encodeCharactersToByteArray(chars, table);
+            }
+        });
+        names.add("HuffmanTree.huffmanTreeToByteArray");
+        operations.add(new Operation() {
+            public void run() {
+                sink = HuffmanTree.huffmanTreeToByteArray(tree);
+            }
+        });
+        names.add("HuffmanTree.huffmanTreeFromByteArray");
+        operations.add(new Operation() {
+            public void run() {
+                sink = HuffmanTree.huffmanTreeFromByteArray(treeBytes);
+            }
+        });
+        names.add("HuffmanTree.decodeBinaryString");
+        operations.add(new Operation() {
+            public void run() {
+                sink = HuffmanTree.decodeBinaryString(bitString, tree);
+            }
+        });
+        names.add("HuffmanDecoder.decode");
+        operations.add(new Operation() {
+            public void run() {
+                sink = decoder.decode(encoded, decoded);
+            }
+        });
+
+        names.add("HuffmanCodec.compress");
+        operations.add(new Operation() {
+            public void run() {
+                sink = codec.compress(bytes, 0, size, codecBuffer, 0);
+            }
+        });
+        names.add("HuffmanCodec.decompress");
+        operations.add(new Operation() {
+            public void run() {
+                sink = codec.decompress(codecBuffer, 0, codecLength, codecOut, 0);
+            }
+        });
+        names.add("HuffmanCodec.compress(direct)");
+        operations.add(new Operation() {
+            public void run() {
+                sink = codec.compress(directIn.duplicate(), directCompressed.duplicate().clear());
+            }
+        });
+        names.add("HuffmanCodec.decompress(direct)");
+        operations.add(new Operation() {
+            public void run() {
+                sink = codec.decompress(directCompressed.duplicate(), directOut.duplicate());
+            }
+        });
+        names.add("HuffmanBlock.decode");
+        operations.add(new Operation() {
+            public void run() {
+                sink = HuffmanBlock.decode(block, 0, blockOut, 0);
+            }
+        });
+        names.add("InterleavedBlock.decode");
+        operations.add(new Operation() {
+            public void run() {
+                sink = InterleavedBlock.decode(interleavedBlock, 0, blockOut, 0);
+            }
+        });
+
+        for (int i = 0; i < names.size(); i++) {
+            if (names.get(i).contains(filter)) {
+                double[] result = measure(operations.get(i));
+                System.out.println(String.format(Locale.ROOT, "%-40s %-8s %10d %12.1f %12.1f %14.0f",
+                        names.get(i), corpus, size, result[0], size * result[0] / 1e6, result[1]));
+            }
+        }
+    }
+
+    /**
+     * Runs operation through the warmup and measurement iterations and returns {operations per second,
+     * bytes allocated per operation}. The allocation figure is -1 if the JVM cannot measure it.
+     */
+    static double[] measure(Operation operation) {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            runFor(operation, ITERATION_MILLIS);
+        }
+        long operations = 0;
+        long nanos = 0;
+        long allocated = 0;
+        for (int i = 0; i < MEASURE_ITERATIONS; i++) {
+            long allocatedBefore = allocatedBytes();
+            long start = System.nanoTime();
+            operations += runFor(operation, ITERATION_MILLIS);
+            nanos += System.nanoTime() - start;
+            allocated += allocatedBytes() - allocatedBefore;
+        }
+        double opsPerSecond = operations / (nanos / 1e9);
+        double allocatedPerOp = (allocatedBytes() < 0 ? -1 : (double) allocated / operations);
+        return new double[] {opsPerSecond, allocatedPerOp};
+    }
+
+    /**
+     * Runs operation repeatedly for at least millis milliseconds (and at least once) and returns the count
+     */
+    static long runFor(Operation operation, long millis) {
+        long deadline = System.nanoTime() + millis * 1000000L;
+        long count = 0;
+        do {
+            operation.run();
+            count++;
+        } while (System.nanoTime() < deadline);
+        return count;
+    }
+
+    /**
+     * Returns the number of bytes allocated so far by the current thread, or -1 if the JVM does not support it
+     */
+    static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    /**
+     * Generates size bytes of the named synthetic corpus
+     */
+    static byte[] generateCorpus(String corpus, int size, Random random) {
+        byte[] data = new byte[size];
+        if (corpus.equals("uniform")) {
+            random.nextBytes(data);
+        } else if (corpus.equals("zipf")) {
+            // symbol k is drawn with probability proportional to 1 / (k + 1)
+            double[] cumulative = new double[256];
+            double total = 0;
+            for (int k = 0; k < 256; k++) {
+                total += 1.0 / (k + 1);
+                cumulative[k] = total;
+            }
+            for (int i = 0; i < size; i++) {
+                int k = Arrays.binarySearch(cumulative, random.nextDouble() * total);
+                data[i] = (byte) Math.min(255, (k < 0 ? -k - 1 : k));
+            }
+        } else if (corpus.equals("english")) {
+            String[] words = ("the of and to in is that it was for on are as with his they at be this from have "
+                    + "or by one had not but what all were when we there can an your which their said if do will "
+                    + "each about how up out them then she many some so these would other into has more her two "
+                    + "like him see time could no make than first been its who now people my made over did down "
+                    + "only way find use may water long little very after words called just where most know")
+                    .split(" ");
+            int i = 0;
+            boolean sentenceStart = true;
+            while (i < size) {
+                // Zipf-like choice of word: earlier words in the list are more common
+                String word = words[(int) (Math.pow(random.nextDouble(), 2.5) * words.length)];
+                if (sentenceStart) {
+                    word = Character.toUpperCase(word.charAt(0)) + word.substring(1);
+                    sentenceStart = false;
+                }
+                int r = random.nextInt(20);
+                String separator = (r == 0 ? ".\n" : r == 1 ? ", " : " ");
+                sentenceStart = (r == 0);
+                String piece = word + separator;
+                for (int j = 0; j < piece.length() && i < size; j++) {
+                    data[i++] = (byte) piece.charAt(j);
+                }
+            }
+        } else if (corpus.equals("binary")) {
+            // fixed size little-endian records: a slowly increasing id, a small counter and a float
+            int id = 0;
+            int i = 0;
+            while (i < size) {
+                id += random.nextInt(4);
+                int counter = random.nextInt(100);
+                int bits = Float.floatToIntBits(random.nextFloat() * 1000);
+                int[] fields = {id, counter, bits};
+                for (int field : fields) {
+                    for (int j = 0; j < 4 && i < size; j++) {
+                        data[i++] = (byte) (field >>> (8 * j));
+                    }
+                }
+            }
+        } else {
+            throw new IllegalArgumentException("Unknown corpus: " + corpus);
+        }
+        return data;
+    }
+
+    private static String bitString(byte[] encoded) {
+        StringBuilder bits = new StringBuilder();
+        for (int i = 1; i < encoded.length; i++) {
+            bits.append(BinaryHelper.bitStringFromByte(encoded[i]));
+        }
+        bits.setLength((int) HuffmanDecoder.validBits(encoded));
+        return bits.toString();
+    }
+}
@@ -0,0 +1,312 @@
+/**
+ * This class implements the self-contained blocks used by the streaming and block based formats. Each block
+ * holds up to a few MB of bytes compressed with their own canonical code, so a block can be encoded and
+ * decoded without looking at any other part of the data. A block is laid out as (ints are 4 byte big-endian):
+ *
+ *   int  number of uncompressed bytes n (0 marks the end of a stream)
+ *   int  size of the code length header, followed by the header (see CanonicalCode)
+ *   int  size of the encoded data, followed by the packed encoded bytes (see BitWriter)
+ */
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+public class HuffmanBlock {
+
+    /** Default number of uncompressed bytes per block */
+    public static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+
+    /** Default longest code length. Byte codes limited to 15 bits lose almost nothing against plain Huffman. */
+    public static final int DEFAULT_MAX_CODE_LENGTH = 15;
+
+    /** Default longest code length for blocks of chars, which have up to 65536 distinct symbols */
+    public static final int CHAR_MAX_CODE_LENGTH = 24;
+
+    /**
+     * Compresses data[offset .. offset + length) into a single block, with no code longer than maxCodeLength
+     */
+    public static byte[] encode(byte[] data, int offset, int length, int maxCodeLength) {
+        return encode(ByteBuffer.wrap(data), offset, length, maxCodeLength);
+    }
+
+    /**
+     * Same as encode above, for length bytes of data starting at the absolute index offset. The position of
+     * data is not changed.
+     */
+    public static byte[] encode(ByteBuffer data, int offset, int length, int maxCodeLength) {
+        CodecMetrics metrics = Metrics.get();
+        long start = System.nanoTime();
+        long[] frequencies = new long[256];
+        Histogram.addBytes(data, offset, length, frequencies);
+        long counted = System.nanoTime();
+        int[] lengths = LengthLimitedCode.codeLengths(frequencies, maxCodeLength);
+        CodeTable table = CanonicalCode.fromLengths(lengths);
+        long built = System.nanoTime();
+
+        byte[] header = CanonicalCode.lengthsToByteArray(lengths);
+        long serialized = System.nanoTime();
+        byte[] encoded = HuffmanCode.encodeBytes(data, offset, length, table);
+        byte[] block = assemble(length, header, encoded);
+        long encodeEnd = System.nanoTime();
+
+        metrics.recordPhase(CodecMetrics.Phase.COUNT, counted - start);
+        metrics.recordPhase(CodecMetrics.Phase.BUILD, built - counted);
+        metrics.recordPhase(CodecMetrics.Phase.SERIALIZE, serialized - built);
+        metrics.recordPhase(CodecMetrics.Phase.ENCODE, encodeEnd - serialized);
+        metrics.recordBytes(length, block.length);
+        Metrics.recordCode(metrics, frequencies, lengths);
+        return block;
+    }
+
+    /**
+     * Compresses the chars data[offset .. offset + length) into a single block with 16-bit symbols. The layout
+     * is the same as for byte blocks; only the code covers up to 65536 symbols.
+     */
+    public static byte[] encodeChars(char[] data, int offset, int length, int maxCodeLength) {
+        CodecMetrics metrics = Metrics.get();
+        long start = System.nanoTime();
+        long[] frequencies = new long[65536];
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            frequencies[data[i]]++;
+        }
+        long counted = System.nanoTime();
+        int[] lengths = LengthLimitedCode.codeLengths(frequencies, maxCodeLength);
+        CodeTable table = CanonicalCode.fromLengths(lengths);
+        long built = System.nanoTime();
+
+        byte[] header = CanonicalCode.lengthsToByteArray(lengths);
+        long serialized = System.nanoTime();
+        byte[] encoded = HuffmanCode.encodeChars(data, offset, length, table);
+        byte[] block = assemble(length, header, encoded);
+        long encodeEnd = System.nanoTime();
+
+        metrics.recordPhase(CodecMetrics.Phase.COUNT, counted - start);
+        metrics.recordPhase(CodecMetrics.Phase.BUILD, built - counted);
+        metrics.recordPhase(CodecMetrics.Phase.SERIALIZE, serialized - built);
+        metrics.recordPhase(CodecMetrics.Phase.ENCODE, encodeEnd - serialized);
+        metrics.recordBytes(2L * length, block.length);
+        Metrics.recordCode(metrics, frequencies, lengths);
+        return block;
+    }
+
+    /**
+     * Returns the block that marks the end of a stream
+     */
+    public static byte[] endMarker() {
+        return new byte[4];
+    }
+
+    /**
+     * Returns the number of uncompressed bytes held by the block that starts at block[offset]
+     */
+    public static int decodedLength(byte[] block, int offset) {
+        return readInt(block, offset);
+    }
+
+    /**
+     * Returns the number of uncompressed bytes held by the block that starts at the absolute index offset
+     */
+    public static int decodedLength(ByteBuffer block, int offset) {
+        return readInt(block, offset);
+    }
+
+    /**
+     * Decodes the block that starts at block[offset] into out, starting at outOffset, and returns the number
+     * of bytes written
+     */
+    public static int decode(byte[] block, int offset, byte[] out, int outOffset) {
+        long start = System.nanoTime();
+        int length = readInt(block, offset);
+        if (length == 0) {
+            return 0;
+        }
+        int headerLength = readInt(block, offset + 4);
+        if (headerLength < 0 || offset + 12L + headerLength > block.length) {
+            throw new IllegalArgumentException("Corrupt block header length: " + headerLength);
+        }
+        int[] lengths = byteCodeLengths(CanonicalCode.lengthsFromByteArray(block, offset + 8, headerLength));
+
+        int dataOffset = offset + 12 + headerLength;
+        int dataLength = readInt(block, dataOffset - 4);
+        if (dataLength < 0 || dataOffset + (long) dataLength > block.length) {
+            throw new IllegalArgumentException("Corrupt block data length: " + dataLength);
+        }
+        new HuffmanDecoder(CanonicalCode.fromLengths(lengths)).decode(block, dataOffset, dataLength, out, outOffset,
+                length);
+        CodecMetrics metrics = Metrics.get();
+        metrics.recordPhase(CodecMetrics.Phase.DECODE, System.nanoTime() - start);
+        metrics.recordBytes(12L + headerLength + dataLength, length);
+        return length;
+    }
+
+    /**
+     * Same as decode above, for buffers. Offsets are absolute indexes and the positions of the buffers are
+     * not changed.
+     */
+    public static int decode(ByteBuffer block, int offset, ByteBuffer out, int outOffset) {
+        long start = System.nanoTime();
+        int length = readInt(block, offset);
+        if (length == 0) {
+            return 0;
+        }
+        int headerLength = readInt(block, offset + 4);
+        if (headerLength < 0 || headerLength > CanonicalCode.maxHeaderLength(256)
+                || offset + 12L + headerLength > block.limit()) {
+            throw new IllegalArgumentException("Corrupt block header length: " + headerLength);
+        }
+        byte[] header = new byte[headerLength];
+        for (int i = 0; i < headerLength; i++) {
+            header[i] = block.get(offset + 8 + i);
+        }
+        int[] lengths = byteCodeLengths(CanonicalCode.lengthsFromByteArray(header));
+
+        int dataOffset = offset + 12 + headerLength;
+        int dataLength = readInt(block, dataOffset - 4);
+        if (dataLength < 0 || dataOffset + (long) dataLength > block.limit()) {
+            throw new IllegalArgumentException("Corrupt block data length: " + dataLength);
+        }
+        new HuffmanDecoder(CanonicalCode.fromLengths(lengths)).decode(block, dataOffset, dataLength, out, outOffset,
+                length);
+        CodecMetrics metrics = Metrics.get();
+        metrics.recordPhase(CodecMetrics.Phase.DECODE, System.nanoTime() - start);
+        metrics.recordBytes(12L + headerLength + dataLength, length);
+        return length;
+    }
+
+    /**
+     * Decodes the char block written by encodeChars that starts at block[offset] into out, starting at
+     * outOffset, and returns the number of chars written
+     */
+    public static int decodeChars(byte[] block, int offset, char[] out, int outOffset) {
+        long start = System.nanoTime();
+        int length = readInt(block, offset);
+        if (length == 0) {
+            return 0;
+        }
+        int headerLength = readInt(block, offset + 4);
+        if (headerLength < 0 || offset + 12L + headerLength > block.length) {
+            throw new IllegalArgumentException("Corrupt block header length: " + headerLength);
+        }
+        int[] lengths = CanonicalCode.lengthsFromByteArray(block, offset + 8, headerLength);
+
+        int dataOffset = offset + 12 + headerLength;
+        int dataLength = readInt(block, dataOffset - 4);
+        if (dataLength < 0 || dataOffset + (long) dataLength > block.length) {
+            throw new IllegalArgumentException("Corrupt block data length: " + dataLength);
+        }
+        new HuffmanDecoder(CanonicalCode.fromLengths(lengths)).decode(block, dataOffset, dataLength, out, outOffset,
+                length);
+        CodecMetrics metrics = Metrics.get();
+        metrics.recordPhase(CodecMetrics.Phase.DECODE, System.nanoTime() - start);
+        metrics.recordBytes(12L + headerLength + dataLength, 2L * length);
+        return length;
+    }
+
+    /**
+     * Returns the total size in bytes of the block that starts at block[offset]
+     */
+    public static int encodedLength(byte[] block, int offset) {
+        if (readInt(block, offset) == 0) {
+            return 4;
+        }
+        int headerLength = readInt(block, offset + 4);
+        return 12 + headerLength + readInt(block, offset + 8 + headerLength);
+    }
+
+    /**
+     * Reads the next complete byte block from in. Returns null when the end marker is reached. The header and
+     * data sizes are checked against what a block of its length can need before they are allocated, so a
+     * corrupt stream fails with an IOException rather than an OutOfMemoryError.
+     */
+    public static byte[] read(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length == 0) {
+            return null;
+        }
+        if (length < 0) {
+            throw new IOException("Corrupt block length: " + length);
+        }
+        int headerLength = in.readInt();
+        if (headerLength < 0 || headerLength > CanonicalCode.maxHeaderLength(256)) {
+            throw new IOException("Corrupt block header length: " + headerLength);
+        }
+        byte[] header = readFully(in, headerLength);
+        int dataLength = in.readInt();
+        if (dataLength < 0 || dataLength > maxEncodedLength(length)) {
+            throw new IOException("Corrupt block data length: " + dataLength);
+        }
+
+        byte[] block = new byte[12 + headerLength + dataLength];
+        writeInt(block, 0, length);
+        writeInt(block, 4, headerLength);
+        System.arraycopy(header, 0, block, 8, headerLength);
+        writeInt(block, 8 + headerLength, dataLength);
+        readFully(in, block, 12 + headerLength, dataLength);
+        return block;
+    }
+
+    /**
+     * Returns the most bytes the packed encoding of length symbols can take: the padding byte plus
+     * CodeTable.MAX_CODE_LENGTH bits per symbol
+     */
+    static long maxEncodedLength(long length) {
+        return 1 + length * (CodeTable.MAX_CODE_LENGTH / 8);
+    }
+
+    /**
+     * Checks that a code read from a byte block only has symbols that fit in a byte
+     */
+    private static int[] byteCodeLengths(int[] lengths) {
+        if (lengths.length > 256) {
+            throw new IllegalArgumentException("Byte block has a code for symbol " + (lengths.length - 1));
+        }
+        return lengths;
+    }
+
+    private static byte[] assemble(int length, byte[] header, byte[] encoded) {
+        byte[] block = new byte[12 + header.length + encoded.length];
+        writeInt(block, 0, length);
+        writeInt(block, 4, header.length);
+        System.arraycopy(header, 0, block, 8, header.length);
+        writeInt(block, 8 + header.length, encoded.length);
+        System.arraycopy(encoded, 0, block, 12 + header.length, encoded.length);
+        return block;
+    }
+
+    private static byte[] readFully(DataInputStream in, int length) throws IOException {
+        if (length < 0) {
+            throw new IOException("Corrupt block header length: " + length);
+        }
+        byte[] bytes = new byte[length];
+        readFully(in, bytes, 0, length);
+        return bytes;
+    }
+
+    private static void readFully(DataInputStream in, byte[] bytes, int offset, int length) throws IOException {
+        try {
+            in.readFully(bytes, offset, length);
+        } catch (EOFException e) {
+            throw new IOException("Stream ends in the middle of a block", e);
+        }
+    }
+
+    static void writeInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+
+    static int readInt(byte[] bytes, int offset) {
+        return ((bytes[offset] & 0xFF) << 24) | ((bytes[offset + 1] & 0xFF) << 16)
+                | ((bytes[offset + 2] & 0xFF) << 8) | (bytes[offset + 3] & 0xFF);
+    }
+
+    static int readInt(ByteBuffer bytes, int offset) {
+        return ((bytes.get(offset) & 0xFF) << 24) | ((bytes.get(offset + 1) & 0xFF) << 16)
+                | ((bytes.get(offset + 2) & 0xFF) << 8) | (bytes.get(offset + 3) & 0xFF);
+    }
+}
@@ -0,0 +1,144 @@
+/**
+ * This class implements Huffman tree construction in linear time after a single sort. The leaves are sorted
+ * by frequency once, and since every merged node is at least as heavy as the one merged before it, the merged
+ * nodes come out already sorted too. So instead of a priority queue two FIFO queues are enough: the sorted
+ * leaves and the merged nodes in the order they were made. Each step takes the two lightest heads, which is
+ * O(1), and everything lives in primitive arrays.
+ *
+ * Nodes are numbered 0 .. n - 1 for the leaves in sorted order and n .. 2n - 2 for the merged nodes in the
+ * order they were made, so the root is always node 2n - 2 and every parent has a higher number than its
+ * children.
+ */
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+public class HuffmanBuilder {
+
+    /**
+     * Returns the symbols with a non-zero frequency sorted by increasing frequency, with ties broken by
+     * increasing symbol
+     */
+    public static int[] sortedSymbols(final long[] frequencies) {
+        int n = 0;
+        long max = 0;
+        for (long f : frequencies) {
+            if (f < 0) {
+                throw new IllegalArgumentException("Negative frequency: " + f);
+            }
+            if (f > 0) {
+                n++;
+                max = Math.max(max, f);
+            }
+        }
+        int[] symbols = new int[n];
+        int symbolBits = 32 - Integer.numberOfLeadingZeros(Math.max(1, frequencies.length - 1));
+
+        if (max < (1L << (63 - symbolBits))) {
+            // pack (frequency, symbol) into one long so a primitive sort does all the work
+            long[] keys = new long[n];
+            int k = 0;
+            for (int symbol = 0; symbol < frequencies.length; symbol++) {
+                if (frequencies[symbol] > 0) {
+                    keys[k++] = (frequencies[symbol] << symbolBits) | symbol;
+                }
+            }
+            Arrays.sort(keys);
+            long mask = (1L << symbolBits) - 1;
+            for (int i = 0; i < n; i++) {
+                symbols[i] = (int) (keys[i] & mask);
+            }
+            return symbols;
+        }
+
+        Integer[] order = new Integer[n];
+        int k = 0;
+        for (int symbol = 0; symbol < frequencies.length; symbol++) {
+            if (frequencies[symbol] > 0) {
+                order[k++] = symbol;
+            }
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Long.compare(frequencies[a], frequencies[b]);
+            }
+        });
+        for (int i = 0; i < n; i++) {
+            symbols[i] = order[i];
+        }
+        return symbols;
+    }
+
+    /**
+     * Takes leaf weights sorted in increasing order and builds the Huffman tree over them with the two queue
+     * algorithm. Returns the children of the merged nodes: merged node n + k has children[2k] as its left and
+     * children[2k + 1] as its right child, with the lighter child on the left. Needs at least 2 weights.
+     */
+    public static int[] merge(long[] weights) {
+        int n = weights.length;
+        if (n < 2) {
+            throw new IllegalArgumentException("Need at least 2 leaves to merge: " + n);
+        }
+        int[] children = new int[2 * (n - 1)];
+        long[] merged = new long[n - 1];
+        int leaf = 0;
+        int head = 0;
+        for (int k = 0; k < n - 1; k++) {
+            long weight = 0;
+            for (int c = 0; c < 2; c++) {
+                // on a tie take the leaf, which keeps the tree as shallow as possible
+                if (leaf < n && (head >= k || weights[leaf] <= merged[head])) {
+                    children[2 * k + c] = leaf;
+                    weight += weights[leaf++];
+                } else {
+                    children[2 * k + c] = n + head;
+                    weight += merged[head++];
+                }
+            }
+            merged[k] = weight;
+        }
+        return children;
+    }
+
+    /**
+     * Returns the Huffman code length of each symbol, indexed by symbol (0 for symbols with frequency 0).
+     * A single used symbol gets a 1 bit code.
+     */
+    public static int[] codeLengths(long[] frequencies) {
+        int[] lengths = new int[frequencies.length];
+        int[] symbols = sortedSymbols(frequencies);
+        int n = symbols.length;
+        if (n == 0) {
+            return lengths;
+        }
+        if (n == 1) {
+            lengths[symbols[0]] = 1;
+            return lengths;
+        }
+        int[] children = merge(weights(frequencies, symbols));
+
+        // parents are numbered above their children, so one pass down from the root sets every depth
+        int[] depths = new int[2 * n - 1];
+        for (int node = 2 * n - 2; node >= n; node--) {
+            int k = node - n;
+            depths[children[2 * k]] = depths[node] + 1;
+            depths[children[2 * k + 1]] = depths[node] + 1;
+        }
+        for (int i = 0; i < n; i++) {
+            lengths[symbols[i]] = depths[i];
+        }
+        return lengths;
+    }
+
+    /**
+     * Returns the frequencies of symbols, in the same order
+     */
+    static long[] weights(long[] frequencies, int[] symbols) {
+        long[] weights = new long[symbols.length];
+        for (int i = 0; i < symbols.length; i++) {
+            weights[i] = frequencies[symbols[i]];
+        }
+        return weights;
+    }
+}
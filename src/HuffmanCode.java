@@ -1,34 +1,28 @@
 /**
- * This class implements Huffman codes for files containing ASCII characters. It can read and compress a file and also
- * decode a compressed file and covert it back to its original ASCII characters.
+ * This class implements Huffman codes for files of any bytes, which it handles as characters between 0 and 255.
+ * It can read and compress a file and also decode a compressed file and convert it back to its original bytes.
  */
 
-import java.io.File;
-import java.io.FileReader;
-import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.*;
 
 public class HuffmanCode{
 
+    // bytes copied at once from a direct buffer onto the heap
+    private static final int COPY_SIZE = 1 << 16;
+
     /**
-     * Opens a file containing ascii characters and returns them as an ArrayList of characters (e.g.
+     * Opens a file and returns its bytes as an ArrayList of characters, one character per byte (e.g.
      * if the file contents were: "abc\nd ef" then the resulting ArrayList would be:
      * {'a', 'b', 'c', '\n', 'd', ' ', 'e', 'f'}
+     * No charset decoding is done, so any file (including non-ASCII text and binary data) comes back with
+     * every byte as a character between 0 and 255. Throws UncheckedIOException if the file cannot be read.
      */
     public static ArrayList<Character> charactersFromFile(String fileName) {
-        ArrayList<Character> fileChars = new ArrayList<Character>();
-        File f = new File(fileName);
-        try {
-            FileReader fr = new FileReader(f);
-            int next;
-            while ((next = fr.read()) != -1) {
-                Character current = (char) next;
-                fileChars.add(current);
-            }
-
-        } catch (IOException e) {
-            System.out.println("Could not open file: " + fileName);
-            System.exit(1);
+        byte[] bytes = BinaryHelper.readBytesFromFile(fileName);
+        ArrayList<Character> fileChars = new ArrayList<Character>(bytes.length);
+        for (byte b : bytes) {
+            fileChars.add((char) (b & 0xFF));
         }
         return fileChars;
     }
@@ -40,58 +34,116 @@ public class HuffmanCode{
      * {a->3, b->1, c->2, d->1}
      */
     public static HashMap<Character, Integer> frequenciesFromArray(ArrayList<Character> charArray) {
+        long start = System.nanoTime();
+        // count into a primitive table first so that the map is only touched once per distinct character
+        long[] counts = Histogram.ofCharacters(charArray);
         HashMap<Character, Integer> freq = new HashMap<Character, Integer>();
-        for(Character c : charArray){
-            if(freq.containsKey(c)){
-                freq.put(c, freq.get(c) + 1);
-            }
-            else{
-                freq.put(c, 1);
+        for (int c = 0; c < counts.length; c++) {
+            if (counts[c] != 0) {
+                freq.put((char) c, (int) counts[c]);
             }
         }
+        Metrics.get().recordPhase(CodecMetrics.Phase.COUNT, System.nanoTime() - start);
         return freq;
     }
 
     /**
      * Takes a HashMap with character frequencies and generates a HuffmanTree to optimally encode
-     * the individual characters.
+     * the individual characters. Characters with a frequency of 0 are left out. A single character gives a
+     * tree that is just a leaf, and an empty map gives null.
      */
     public static HuffmanTree generateCodingTree(HashMap<Character, Integer> charFreq) {
-        // priority queue sorts its HuffmanTree according to each nodes value(freq).
-        // treeCompare method implements this comparison. See method for implementation details.
-        PriorityQueue<HuffmanTree> q = new PriorityQueue<HuffmanTree>(treeCompare);
-
-        HuffmanTree finalTree = new HuffmanTree(); // HuffmanTree to return after construction
-
-        for(Map.Entry<Character, Integer> arr : charFreq.entrySet()){
-            Character c = arr.getKey(); // ascii character
-            Integer frequency = arr.getValue(); // number of times character found
-            HuffmanTree root = new HuffmanTree(c, frequency); // create HuffmanTree for each character
-            q.add(root);
-        }
-        // construct a HuffmanTree
-        while(!q.isEmpty()){
-            // remove HuffmanTrees with 2 smallest frequencies according to priority queue
-            HuffmanTree leftTree = q.remove();
-            HuffmanTree rightTree = q.remove();
-            // merge and create a new tree with 2 smallest HuffmanTrees as left and right child
-            HuffmanTree parent = HuffmanTree.merge(leftTree, rightTree);
-            // if q is empty HuffmanTree construction is done
-            if(q.isEmpty()){
-                finalTree = parent;
-            }
-            // if q is not empty add constructed HuffmanTree back to priority queue
-            else {
-                q.add(parent);
-            }
+        int size = 0;
+        for (Character c : charFreq.keySet()) {
+            size = Math.max(size, c + 1);
+        }
+        long[] frequencies = new long[size];
+        for (Map.Entry<Character, Integer> entry : charFreq.entrySet()) {
+            frequencies[entry.getKey()] = entry.getValue();
+        }
+        return generateCodingTree(frequencies);
+    }
+
+    /**
+     * Takes a table of frequencies indexed by character (e.g. from Histogram) and generates a HuffmanTree to
+     * optimally encode the characters with a non-zero frequency. The leaves are sorted once and then merged
+     * in linear time (see HuffmanBuilder). A single character gives a tree that is just a leaf, and a table
+     * with no non-zero frequency gives null.
+     */
+    public static HuffmanTree generateCodingTree(long[] frequencies) {
+        long start = System.nanoTime();
+        HuffmanTree tree = buildCodingTree(frequencies);
+        Metrics.get().recordPhase(CodecMetrics.Phase.BUILD, System.nanoTime() - start);
+        return tree;
+    }
+
+    /**
+     * Builds the tree for generateCodingTree(long[]), which times it
+     */
+    private static HuffmanTree buildCodingTree(long[] frequencies) {
+        if (frequencies.length > Character.MAX_VALUE + 1) {
+            frequencies = Arrays.copyOf(frequencies, Character.MAX_VALUE + 1);
+        }
+        int[] symbols = HuffmanBuilder.sortedSymbols(frequencies);
+        int n = symbols.length;
+        if (n == 0) {
+            return null;
+        }
+        HuffmanTree[] nodes = new HuffmanTree[2 * n - 1];
+        for (int i = 0; i < n; i++) {
+            nodes[i] = new HuffmanTree((char) symbols[i], frequencies[symbols[i]]);
+        }
+        if (n == 1) {
+            return nodes[0];
+        }
+        int[] children = HuffmanBuilder.merge(HuffmanBuilder.weights(frequencies, symbols));
+        for (int k = 0; k < n - 1; k++) {
+            nodes[n + k] = HuffmanTree.merge(nodes[children[2 * k]], nodes[children[2 * k + 1]]);
+        }
+        return nodes[2 * n - 2];
+    }
+
+    /**
+     * Same as generateCodingTree above, but no character gets a code longer than maxCodeLength bits. If the
+     * plain Huffman tree is already shallow enough it is returned unchanged. Otherwise the code lengths are
+     * computed with the package-merge algorithm (see LengthLimitedCode), which gives the best possible code
+     * under the limit, and the tree of the matching canonical code is returned.
+     */
+    public static HuffmanTree generateCodingTree(HashMap<Character, Integer> charFreq, int maxCodeLength) {
+        HuffmanTree tree = generateCodingTree(charFreq);
+        if (tree == null) {
+            return null;
+        }
+        int longest = 0;
+        for (int length : tree.getCodeLengths()) {
+            longest = Math.max(longest, length);
+        }
+        if (longest <= maxCodeLength) {
+            return tree;
         }
-        return finalTree;
+        return HuffmanTree.fromCodeLengths(codeLengthsFromFrequencies(charFreq, maxCodeLength));
     }
 
     /**
-     * Used when adding HuffmanTrees to priority queue by comparing freq attribute.
-     * They are sorting where the lowest freq has the highest priority creating a ascending queue.
-     * Overrides Comparator of priority queue to handle HuffmanTrees.
+     * Takes a HashMap with character frequencies and returns the optimal code length for each character
+     * (indexed by character) such that no code is longer than maxCodeLength bits.
+     */
+    public static int[] codeLengthsFromFrequencies(HashMap<Character, Integer> charFreq, int maxCodeLength) {
+        int size = 0;
+        for (Character c : charFreq.keySet()) {
+            size = Math.max(size, c + 1);
+        }
+        long[] frequencies = new long[size];
+        for (Map.Entry<Character, Integer> entry : charFreq.entrySet()) {
+            frequencies[entry.getKey()] = entry.getValue();
+        }
+        return LengthLimitedCode.codeLengths(frequencies, maxCodeLength);
+    }
+
+    /**
+     * Orders HuffmanTrees by frequency, lowest first (see HuffmanTree.compareTo), for callers that sort or
+     * queue trees themselves. generateCodingTree does not use it, it merges the sorted leaves with two queues
+     * (see HuffmanBuilder).
      */
     public static Comparator<HuffmanTree> treeCompare = new Comparator<HuffmanTree>() {
         @Override
@@ -113,12 +165,142 @@ public class HuffmanCode{
      * a  b  c  c  a a
      */
     public static String encodeCharacters(ArrayList<Character> charArray, HashMap<Character, ArrayList<Boolean>> codeMap) {
-        String bitString = "";
+        long start = System.nanoTime();
+        StringBuilder bitString = new StringBuilder();
         for (Character c : charArray) {
-            String cstring = BinaryHelper.bitStringFromBooleanList(codeMap.get(c));
-            bitString = bitString.concat(cstring);
+            for (Boolean bit : codeMap.get(c)) {
+                bitString.append(bit ? '1' : '0');
+            }
         }
-        return bitString;
+        CodecMetrics metrics = Metrics.get();
+        metrics.recordPhase(CodecMetrics.Phase.ENCODE, System.nanoTime() - start);
+        metrics.recordBytes(charArray.size(), (bitString.length() + 7) / 8);
+        return bitString.toString();
+    }
+
+    /**
+     * Takes an ArrayList of characters and a HashMap of character encodings and writes the encoding of
+     * charArray straight into a byte array. The result is identical to
+     * BinaryHelper.byteArrayFromBitString(encodeCharacters(charArray, codeMap)), including the leading
+     * padding count byte, but no String of 1's and 0's is ever built.
+     */
+    public static byte[] encodeCharactersToByteArray(ArrayList<Character> charArray,
+                                                     HashMap<Character, ArrayList<Boolean>> codeMap) {
+        return encodeCharactersToByteArray(charArray, CodeTable.fromEncodings(codeMap));
+    }
+
+    /**
+     * Same as encodeCharactersToByteArray above but uses a prebuilt CodeTable, so the table can be reused
+     * across calls.
+     */
+    public static byte[] encodeCharactersToByteArray(ArrayList<Character> charArray, CodeTable table) {
+        long start = System.nanoTime();
+        BitWriter writer = new BitWriter(charArray.size() / 2);
+        for (Character c : charArray) {
+            if (!table.contains(c)) {
+                throw new IllegalArgumentException("No encoding for character: " + c);
+            }
+            writer.writeBits(table.code(c), table.length(c));
+        }
+        byte[] encoded = writer.toByteArray();
+        CodecMetrics metrics = Metrics.get();
+        metrics.recordPhase(CodecMetrics.Phase.ENCODE, System.nanoTime() - start);
+        metrics.recordBytes(charArray.size(), encoded.length);
+        return encoded;
+    }
+
+    /**
+     * Encodes the bytes data[offset .. offset + length) with table (indexed by unsigned byte value) and
+     * returns the packed byte array, including the leading padding count byte.
+     */
+    public static byte[] encodeBytes(byte[] data, int offset, int length, CodeTable table) {
+        BitWriter writer = new BitWriter(length / 2);
+        writeBytes(data, offset, length, table, writer);
+        return writer.toByteArray();
+    }
+
+    /**
+     * Same as encodeBytes above, for length bytes of data starting at the absolute index offset. Does not
+     * change the position of data. Heap buffers are encoded in place; direct and memory mapped buffers are
+     * copied in chunks of COPY_SIZE bytes with bulk gets, so they are never copied onto the heap as a whole.
+     */
+    public static byte[] encodeBytes(ByteBuffer data, int offset, int length, CodeTable table) {
+        if (data.hasArray()) {
+            return encodeBytes(data.array(), data.arrayOffset() + offset, length, table);
+        }
+        BitWriter writer = new BitWriter(length / 2);
+        byte[] chunk = new byte[Math.min(length, COPY_SIZE)];
+        for (int done = 0; done < length; done += chunk.length) {
+            int n = Math.min(chunk.length, length - done);
+            data.get(offset + done, chunk, 0, n);
+            writeBytes(chunk, 0, n, table, writer);
+        }
+        return writer.toByteArray();
+    }
+
+    /**
+     * Appends the codes of the bytes data[offset .. offset + length) to writer
+     */
+    private static void writeBytes(byte[] data, int offset, int length, CodeTable table, BitWriter writer) {
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            int b = data[i] & 0xFF;
+            if (!table.contains(b)) {
+                throw new IllegalArgumentException("No encoding for byte: " + b);
+            }
+            writer.writeBits(table.code(b), table.length(b));
+        }
+    }
+
+    /**
+     * Encodes the characters data[offset .. offset + length) with table (indexed by character) and returns the
+     * packed byte array, including the leading padding count byte.
+     */
+    public static byte[] encodeChars(char[] data, int offset, int length, CodeTable table) {
+        BitWriter writer = new BitWriter(length);
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            char c = data[i];
+            if (!table.contains(c)) {
+                throw new IllegalArgumentException("No encoding for character: " + (int) c);
+            }
+            writer.writeBits(table.code(c), table.length(c));
+        }
+        return writer.toByteArray();
+    }
+
+    /**
+     * Compresses arbitrary bytes (text in any encoding or binary data) with a canonical code over the 256 byte
+     * values. No charset decoding is done, so decompressBytes gives back exactly the same bytes.
+     */
+    public static byte[] compressBytes(byte[] data) {
+        return HuffmanBlock.encode(data, 0, data.length, HuffmanBlock.DEFAULT_MAX_CODE_LENGTH);
+    }
+
+    /**
+     * Takes the output of compressBytes and returns the original bytes
+     */
+    public static byte[] decompressBytes(byte[] compressed) {
+        byte[] out = new byte[HuffmanBlock.decodedLength(compressed, 0)];
+        HuffmanBlock.decode(compressed, 0, out, 0);
+        return out;
+    }
+
+    /**
+     * Compresses UTF-16 text with a canonical code over the 65536 char values, for text where whole chars are
+     * better symbols than the bytes of some encoding.
+     */
+    public static byte[] compressChars(char[] data) {
+        return HuffmanBlock.encodeChars(data, 0, data.length, HuffmanBlock.CHAR_MAX_CODE_LENGTH);
+    }
+
+    /**
+     * Takes the output of compressChars and returns the original chars
+     */
+    public static char[] decompressChars(byte[] compressed) {
+        char[] out = new char[HuffmanBlock.decodedLength(compressed, 0)];
+        HuffmanBlock.decodeChars(compressed, 0, out, 0);
+        return out;
     }
 
     /**
@@ -0,0 +1,379 @@
+/**
+ * This class implements a reusable, thread-safe byte codec for one fixed code. All of its state (the codes
+ * and the decoder tables) is built in the constructor and never changes, so a single instance can be shared
+ * by any number of threads, including one virtual thread per request, with no locking.
+ *
+ * compress and decompress into caller supplied arrays or ByteBuffers allocate nothing (decompress reuses a
+ * BitReader that it takes and hands back with an atomic swap). The ByteBuffer methods
+ * work on heap and direct buffers alike and never copy the data onto the heap, so a message can go from one
+ * socket buffer to another without a copy. The convenience methods that return new arrays only allocate their
+ * result; their scratch space comes from a shared BufferPool.
+ *
+ * When the JVM runs with --add-modules jdk.incubator.vector and every code is at most
+ * VectorKernels.MAX_CODE_LENGTH bits, compress(byte[], ...) looks up the codes of many bytes per step with
+ * VectorKernels and packs the bytes in pairs; its scratch array is taken and handed back with an atomic swap,
+ * so threads still never wait on each other. Without the module (or with -Dhuffman.vector=false) it falls back
+ * to the scalar loop; both write the same bytes. A compressed message is laid out as:
+ *
+ *   int  number of uncompressed bytes (4 byte big-endian)
+ *   packed encoded bytes (see BitWriter)
+ */
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class HuffmanCodec {
+
+    /** Longest code the codec accepts, so that two codes always fit in its 64-bit accumulator */
+    public static final int MAX_CODE_LENGTH = 32;
+
+    /** Whether compress may use VectorKernels, decided once when the class is loaded */
+    static final boolean VECTORIZED = vectorApiAvailable();
+
+    private static final int HEADER_SIZE = 5;
+
+    private final long[] codes;
+    private final int[] lengths;
+    private final int maxLength;
+    private final int[] vectorCodes; // see VectorKernels.packCodes, null when compress stays scalar
+    private final AtomicReference<int[]> vectorScratch = new AtomicReference<int[]>();
+    private final AtomicReference<BitReader> readers = new AtomicReference<BitReader>(); // reused by decompress
+    private final HuffmanDecoder decoder;
+    private final BufferPool pool;
+
+    /**
+     * Creates a codec for byte code lengths indexed by byte value (see CanonicalCode), with a pool of
+     * scratch buffers sized for the number of available processors
+     */
+    public HuffmanCodec(int[] lengths) {
+        this(lengths, new BufferPool(4 * Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * Creates a codec for byte code lengths indexed by byte value that takes its scratch buffers from pool
+     */
+    public HuffmanCodec(int[] lengths, BufferPool pool) {
+        if (lengths.length > 256) {
+            throw new IllegalArgumentException("Codec only codes byte values");
+        }
+        CodeTable table = CanonicalCode.fromLengths(lengths);
+        this.codes = new long[256];
+        this.lengths = new int[256];
+        int max = 0;
+        for (int b = 0; b < table.size(); b++) {
+            if (table.length(b) > MAX_CODE_LENGTH) {
+                throw new IllegalArgumentException("Codes must be at most " + MAX_CODE_LENGTH + " bits");
+            }
+            this.codes[b] = table.code(b);
+            this.lengths[b] = table.length(b);
+            max = Math.max(max, table.length(b));
+        }
+        this.maxLength = max;
+        this.vectorCodes = (VECTORIZED && max <= VectorKernels.MAX_CODE_LENGTH)
+                ? VectorKernels.packCodes(codes, this.lengths) : null;
+        this.decoder = new HuffmanDecoder(table);
+        this.pool = pool;
+    }
+
+    /**
+     * Creates a codec with the optimal code of at most HuffmanBlock.DEFAULT_MAX_CODE_LENGTH bits for the byte
+     * frequencies (indexed by byte value). Bytes with frequency 0 cannot be compressed.
+     */
+    public static HuffmanCodec fromFrequencies(long[] frequencies) {
+        return new HuffmanCodec(LengthLimitedCode.codeLengths(frequencies, HuffmanBlock.DEFAULT_MAX_CODE_LENGTH));
+    }
+
+    /**
+     * Returns the largest number of bytes compress can write for length input bytes
+     */
+    public int maxCompressedLength(int length) {
+        long max = HEADER_SIZE + ((long) length * maxLength + 7) / 8;
+        if (max > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Input too large: " + length);
+        }
+        return (int) max;
+    }
+
+    /**
+     * Compresses src[offset .. offset + length) into dst starting at dstOffset and returns the number of
+     * bytes written. dst must have room for maxCompressedLength(length) bytes. Allocates nothing.
+     */
+    public int compress(byte[] src, int offset, int length, byte[] dst, int dstOffset) {
+        if (offset < 0 || length < 0 || offset + length > src.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (dstOffset < 0 || dst.length - dstOffset < maxCompressedLength(length)) {
+            throw new IllegalArgumentException("Output buffer too small");
+        }
+        CodecMetrics metrics = Metrics.get();
+        long start = startTime(metrics);
+        int pos = dstOffset + HEADER_SIZE;
+        long bitBuffer = 0; // pending bits, right aligned
+        int bitCount = 0;
+        int end = offset + length;
+        int i = offset;
+        if (vectorCodes != null && length >= 2 * VectorKernels.PAIRS) {
+            // a thread that finds the slot empty allocates its own scratch array, like BufferPool.acquire
+            int[] scratch = vectorScratch.getAndSet(null);
+            if (scratch == null) {
+                scratch = new int[VectorKernels.SCRATCH_SIZE];
+            }
+            for (; end - i >= 2 * VectorKernels.PAIRS; i += 2 * VectorKernels.PAIRS) {
+                if (!VectorKernels.lookupPairs(src, i, vectorCodes, scratch)) {
+                    break; // the scalar loop below reports the byte without a code
+                }
+                // a pair is at most 32 bits and at most 31 bits are pending, so it always fits
+                for (int k = 0; k < VectorKernels.PAIRS; k++) {
+                    int pairLength = scratch[VectorKernels.PAIRS + k];
+                    bitBuffer = (bitBuffer << pairLength) | (scratch[k] & 0xFFFFFFFFL);
+                    bitCount += pairLength;
+                    if (bitCount >= 32) {
+                        bitCount -= 32;
+                        int word = (int) (bitBuffer >>> bitCount);
+                        dst[pos] = (byte) (word >>> 24);
+                        dst[pos + 1] = (byte) (word >>> 16);
+                        dst[pos + 2] = (byte) (word >>> 8);
+                        dst[pos + 3] = (byte) word;
+                        pos += 4;
+                    }
+                }
+            }
+            vectorScratch.set(scratch);
+        }
+        for (; i < end; i++) {
+            int b = src[i] & 0xFF;
+            int codeLength = lengths[b];
+            if (codeLength == 0) {
+                throw new IllegalArgumentException("No encoding for byte: " + b);
+            }
+            bitBuffer = (bitBuffer << codeLength) | codes[b];
+            bitCount += codeLength;
+            if (bitCount >= 32) {
+                bitCount -= 32;
+                int word = (int) (bitBuffer >>> bitCount);
+                dst[pos] = (byte) (word >>> 24);
+                dst[pos + 1] = (byte) (word >>> 16);
+                dst[pos + 2] = (byte) (word >>> 8);
+                dst[pos + 3] = (byte) word;
+                pos += 4;
+            }
+        }
+        int padding = (8 - (bitCount & 7)) & 7;
+        bitBuffer <<= padding;
+        bitCount += padding;
+        while (bitCount > 0) {
+            bitCount -= 8;
+            dst[pos++] = (byte) (bitBuffer >>> bitCount);
+        }
+        HuffmanBlock.writeInt(dst, dstOffset, length);
+        dst[dstOffset + 4] = (byte) padding;
+        record(metrics, CodecMetrics.Phase.ENCODE, start, length, pos - dstOffset);
+        return pos - dstOffset;
+    }
+
+    /**
+     * Compresses the remaining bytes of src into dst, starting at the position of dst, and returns the number
+     * of bytes written. dst must have room for maxCompressedLength(src.remaining()) bytes. On return src has
+     * no bytes remaining and the position of dst is just past the message. Either buffer may be direct.
+     * Allocates nothing.
+     */
+    public int compress(ByteBuffer src, ByteBuffer dst) {
+        int length = src.remaining();
+        int dstOffset = dst.position();
+        if (dst.remaining() < maxCompressedLength(length)) {
+            throw new IllegalArgumentException("Output buffer too small");
+        }
+        CodecMetrics metrics = Metrics.get();
+        long start = startTime(metrics);
+        boolean littleEndian = (dst.order() == ByteOrder.LITTLE_ENDIAN);
+        int pos = dstOffset + HEADER_SIZE;
+        long bitBuffer = 0; // pending bits, right aligned
+        int bitCount = 0;
+        int end = src.limit();
+        for (int i = src.position(); i < end; i++) {
+            int b = src.get(i) & 0xFF;
+            int codeLength = lengths[b];
+            if (codeLength == 0) {
+                throw new IllegalArgumentException("No encoding for byte: " + b);
+            }
+            bitBuffer = (bitBuffer << codeLength) | codes[b];
+            bitCount += codeLength;
+            if (bitCount >= 32) {
+                bitCount -= 32;
+                int word = (int) (bitBuffer >>> bitCount);
+                dst.putInt(pos, littleEndian ? Integer.reverseBytes(word) : word);
+                pos += 4;
+            }
+        }
+        int padding = (8 - (bitCount & 7)) & 7;
+        bitBuffer <<= padding;
+        bitCount += padding;
+        while (bitCount > 0) {
+            bitCount -= 8;
+            dst.put(pos++, (byte) (bitBuffer >>> bitCount));
+        }
+        dst.put(dstOffset, (byte) (length >>> 24));
+        dst.put(dstOffset + 1, (byte) (length >>> 16));
+        dst.put(dstOffset + 2, (byte) (length >>> 8));
+        dst.put(dstOffset + 3, (byte) length);
+        dst.put(dstOffset + 4, (byte) padding);
+        src.position(end);
+        dst.position(pos);
+        record(metrics, CodecMetrics.Phase.ENCODE, start, length, pos - dstOffset);
+        return pos - dstOffset;
+    }
+
+    /**
+     * Compresses data and returns the compressed bytes
+     */
+    public byte[] compress(byte[] data) {
+        byte[] scratch = pool.acquire(maxCompressedLength(data.length));
+        try {
+            int n = compress(data, 0, data.length, scratch, 0);
+            return Arrays.copyOf(scratch, n);
+        } finally {
+            pool.release(scratch);
+        }
+    }
+
+    /**
+     * Returns the number of bytes the compressed message starting at src[offset] decompresses to
+     */
+    public int decompressedLength(byte[] src, int offset) {
+        if (offset < 0 || src.length - offset < HEADER_SIZE) {
+            throw new IllegalArgumentException("Compressed message too short");
+        }
+        int length = HuffmanBlock.readInt(src, offset);
+        if (length < 0) {
+            throw new IllegalArgumentException("Corrupt compressed message length: " + length);
+        }
+        return length;
+    }
+
+    /**
+     * Decompresses the message stored in src[offset .. offset + length) into dst starting at dstOffset and
+     * returns the number of bytes written. Writes no more than the length in the message header, even for a
+     * corrupt message. Allocates nothing.
+     */
+    public int decompress(byte[] src, int offset, int length, byte[] dst, int dstOffset) {
+        if (offset < 0 || length < HEADER_SIZE || offset + length > src.length) {
+            throw new IllegalArgumentException("Compressed message too short");
+        }
+        int expected = decompressedLength(src, offset);
+        if (dstOffset < 0 || dst.length - dstOffset < expected) {
+            throw new IllegalArgumentException("Output buffer too small");
+        }
+        CodecMetrics metrics = Metrics.get();
+        long start = startTime(metrics);
+        BitReader in = readers.getAndSet(null);
+        if (in == null) {
+            in = new BitReader(src, offset + 4, length - 4);
+        } else {
+            in.reset(src, offset + 4, length - 4);
+        }
+        try {
+            decoder.decode(in, dst, dstOffset, expected);
+        } finally {
+            readers.set(in);
+        }
+        record(metrics, CodecMetrics.Phase.DECODE, start, length, expected);
+        return expected;
+    }
+
+    /**
+     * Returns the number of bytes the compressed message starting at the position of src decompresses to. The
+     * position of src is not changed.
+     */
+    public int decompressedLength(ByteBuffer src) {
+        if (src.remaining() < HEADER_SIZE) {
+            throw new IllegalArgumentException("Compressed message too short");
+        }
+        int length = HuffmanBlock.readInt(src, src.position());
+        if (length < 0) {
+            throw new IllegalArgumentException("Corrupt compressed message length: " + length);
+        }
+        return length;
+    }
+
+    /**
+     * Decompresses the message held by the remaining bytes of src into dst, starting at the position of dst,
+     * and returns the number of bytes written. On return src has no bytes remaining and the position of dst is
+     * just past the decompressed bytes. Nothing past the length in the message header is written to dst, even
+     * for a corrupt message. Either buffer may be direct. Allocates nothing.
+     */
+    public int decompress(ByteBuffer src, ByteBuffer dst) {
+        int expected = decompressedLength(src);
+        if (dst.remaining() < expected) {
+            throw new IllegalArgumentException("Output buffer too small");
+        }
+        CodecMetrics metrics = Metrics.get();
+        long start = startTime(metrics);
+        int length = src.remaining();
+        BitReader in = readers.getAndSet(null);
+        if (in == null) {
+            in = new BitReader(src, src.position() + 4, src.remaining() - 4);
+        } else {
+            in.reset(src, src.position() + 4, src.remaining() - 4);
+        }
+        try {
+            decoder.decode(in, dst, dst.position(), expected);
+        } finally {
+            readers.set(in);
+        }
+        src.position(src.limit());
+        dst.position(dst.position() + expected);
+        record(metrics, CodecMetrics.Phase.DECODE, start, length, expected);
+        return expected;
+    }
+
+    /**
+     * Takes the output of compress and returns the original bytes
+     */
+    public byte[] decompress(byte[] compressed) {
+        int length = decompressedLength(compressed, 0);
+        if (length > 8L * compressed.length) {
+            throw new IllegalArgumentException("Compressed message too short for " + length + " bytes");
+        }
+        byte[] out = new byte[length];
+        decompress(compressed, 0, compressed.length, out, 0);
+        return out;
+    }
+
+    /**
+     * Returns the current time for record, or 0 without reading the clock when metrics is NOOP: a message is
+     * often small enough that two clock reads per call would show up in its cost
+     */
+    private static long startTime(CodecMetrics metrics) {
+        return metrics == CodecMetrics.NOOP ? 0 : System.nanoTime();
+    }
+
+    /**
+     * Reports one compress or decompress call that started at start (see startTime) to metrics
+     */
+    private static void record(CodecMetrics metrics, CodecMetrics.Phase phase, long start, long bytesIn,
+            long bytesOut) {
+        if (metrics != CodecMetrics.NOOP) {
+            metrics.recordPhase(phase, System.nanoTime() - start);
+            metrics.recordBytes(bytesIn, bytesOut);
+        }
+    }
+
+    /**
+     * Returns true if the jdk.incubator.vector module is in the boot layer and the huffman.vector system
+     * property does not turn the vector path off. VectorKernels is only touched after the module was found, so
+     * without the module it is never loaded.
+     */
+    private static boolean vectorApiAvailable() {
+        if (!Boolean.parseBoolean(System.getProperty("huffman.vector", "true"))
+                || ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return false;
+        }
+        try {
+            return VectorKernels.PAIRS > 0;
+        } catch (LinkageError e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,451 @@
+/**
+ * This class implements a table driven Huffman decoder. The lookup table is built once from the codes and
+ * then every probe of the table decodes a whole code of up to TABLE_BITS bits at once, instead of following
+ * one child pointer per bit. Codes longer than TABLE_BITS are rare (their symbols occur with probability
+ * less than 2^-TABLE_BITS) and are finished by walking a small array-based trie.
+ *
+ * The decoder reads the packed byte arrays produced by HuffmanCode.encodeCharactersToByteArray and
+ * BinaryHelper.byteArrayFromBitString, where the first byte holds the padding count.
+ */
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+public class HuffmanDecoder {
+
+    /** Number of input bits resolved by a single table probe */
+    public static final int TABLE_BITS = 10;
+
+    private static final VarHandle LONG_VIEW = MethodHandles.byteArrayViewVarHandle(long[].class,
+            ByteOrder.BIG_ENDIAN);
+
+    // Entries > 0 hold (symbol << 8) | codeLength for codes of at most TABLE_BITS bits.
+    // Entries < 0 hold -(trie node) for codes that continue past TABLE_BITS bits.
+    // Entries == 0 are prefixes that no code starts with.
+    private final int[] table;
+
+    // Two slots per trie node (left, right). Slots > 0 point at another node, slots < 0 hold
+    // -(symbol + 1) for a leaf and slots == 0 are unused. Node 0 is never used so that 0 can mean empty.
+    private int[] trie;
+    private int trieNodes;
+
+    private final int minLength;
+    private final int maxLength;
+
+    /**
+     * Builds the lookup tables for the codes in table
+     */
+    public HuffmanDecoder(CodeTable codes) {
+        this.table = new int[1 << TABLE_BITS];
+        this.trie = new int[8];
+        this.trieNodes = 1;
+
+        int min = Integer.MAX_VALUE;
+        int max = 0;
+        for (int symbol = 0; symbol < codes.size(); symbol++) {
+            int length = codes.length(symbol);
+            if (length == 0) {
+                continue;
+            }
+            if (symbol > 0x7FFFFF) {
+                throw new IllegalArgumentException("Symbol too large for decoder: " + symbol);
+            }
+            min = Math.min(min, length);
+            max = Math.max(max, length);
+            long code = codes.code(symbol);
+            if (length <= TABLE_BITS) {
+                int first = (int) (code << (TABLE_BITS - length));
+                int count = 1 << (TABLE_BITS - length);
+                Arrays.fill(table, first, first + count, (symbol << 8) | length);
+            } else {
+                int prefix = (int) (code >>> (length - TABLE_BITS));
+                if (table[prefix] > 0) {
+                    throw new IllegalArgumentException("Codes are not prefix-free");
+                }
+                if (table[prefix] == 0) {
+                    table[prefix] = -newTrieNode();
+                }
+                insertIntoTrie(-table[prefix], code, length - TABLE_BITS, symbol);
+            }
+        }
+        this.minLength = (min == Integer.MAX_VALUE ? 0 : min);
+        this.maxLength = max;
+    }
+
+    /**
+     * Builds the lookup tables for the codes of codingTree
+     */
+    public HuffmanDecoder(HuffmanTree codingTree) {
+        this(CodeTable.fromEncodings(codingTree.getEncodings()));
+    }
+
+    /**
+     * Builds the lookup tables for the codes of a flat tree
+     */
+    public HuffmanDecoder(FlatHuffmanTree codingTree) {
+        this(codingTree.codeTable());
+    }
+
+    /**
+     * Returns an upper bound on the number of symbols encoded in the packed byte array. Use it to size
+     * the output buffer passed to decode.
+     */
+    public int maxDecodedLength(byte[] encoded) {
+        long bits = validBits(encoded);
+        if (bits == 0 || minLength == 0) {
+            return 0;
+        }
+        return (int) Math.min(Integer.MAX_VALUE - 8, bits / minLength);
+    }
+
+    /**
+     * Decodes the packed byte array into out and returns the number of characters written.
+     */
+    public int decode(byte[] encoded, char[] out) {
+        return decode(encoded, 0, encoded.length, out, 0);
+    }
+
+    /**
+     * Decodes the packed byte array stored in encoded[offset .. offset + length) (starting with its padding count
+     * byte) into out, starting at outOffset, and returns the number of characters written.
+     */
+    public int decode(byte[] encoded, int offset, int length, char[] out, int outOffset) {
+        BitReader in = new BitReader(encoded, offset, length);
+        int n = outOffset;
+        while (in.bitsRemaining() > 0) {
+            out[n++] = (char) readSymbol(in);
+        }
+        return n - outOffset;
+    }
+
+    /**
+     * Decodes the packed byte array stored in encoded[offset .. offset + length) (starting with its padding count
+     * byte) into out, starting at outOffset, and returns the number of bytes written. Every symbol in the code
+     * must fit in a byte.
+     */
+    public int decode(byte[] encoded, int offset, int length, byte[] out, int outOffset) {
+        BitReader in = new BitReader(encoded, offset, length);
+        int n = outOffset;
+        while (in.bitsRemaining() > 0) {
+            out[n++] = (byte) readSymbol(in);
+        }
+        return n - outOffset;
+    }
+
+    /**
+     * Decodes exactly count symbols of the packed byte array stored in encoded[offset .. offset + length) into
+     * out[outOffset .. outOffset + count). Nothing outside of that range is written, whatever the input holds.
+     * Throws IllegalArgumentException if the data ends before count symbols or has bits left over after them.
+     */
+    public void decode(byte[] encoded, int offset, int length, char[] out, int outOffset, int count) {
+        checkOutput(out.length, outOffset, count);
+        BitReader in = new BitReader(encoded, offset, length);
+        for (int n = outOffset, end = outOffset + count; n < end; n++) {
+            out[n] = (char) readSymbol(in);
+        }
+        checkFinished(in);
+    }
+
+    /**
+     * Same as the bounded decode above, into bytes. Every symbol in the code must fit in a byte.
+     */
+    public void decode(byte[] encoded, int offset, int length, byte[] out, int outOffset, int count) {
+        decode(new BitReader(encoded, offset, length), out, outOffset, count);
+    }
+
+    /**
+     * Same as the bounded decode above, reading the packed data from in, which callers can reuse
+     */
+    public void decode(BitReader in, byte[] out, int outOffset, int count) {
+        checkOutput(out.length, outOffset, count);
+        for (int n = outOffset, end = outOffset + count; n < end; n++) {
+            out[n] = (byte) readSymbol(in);
+        }
+        checkFinished(in);
+    }
+
+    /**
+     * Same as decode above, for buffers. All offsets are absolute indexes and the positions of the buffers
+     * are not changed, so direct and memory mapped buffers are decoded without copying them onto the heap.
+     */
+    public int decode(ByteBuffer encoded, int offset, int length, ByteBuffer out, int outOffset) {
+        BitReader in = new BitReader(encoded, offset, length);
+        int n = outOffset;
+        while (in.bitsRemaining() > 0) {
+            out.put(n++, (byte) readSymbol(in));
+        }
+        return n - outOffset;
+    }
+
+    /**
+     * Same as the bounded decode above, for buffers: writes exactly count bytes at the absolute indexes
+     * [outOffset .. outOffset + count) of out and nothing else, so the other contents of out (such as other
+     * frames in a socket buffer) are never touched. The positions of the buffers are not changed.
+     */
+    public void decode(ByteBuffer encoded, int offset, int length, ByteBuffer out, int outOffset, int count) {
+        decode(new BitReader(encoded, offset, length), out, outOffset, count);
+    }
+
+    /**
+     * Same as the bounded decode above, reading the packed data from in, which callers can reuse
+     */
+    public void decode(BitReader in, ByteBuffer out, int outOffset, int count) {
+        checkOutput(out.limit(), outOffset, count);
+        for (int n = outOffset, end = outOffset + count; n < end; n++) {
+            out.put(n, (byte) readSymbol(in));
+        }
+        checkFinished(in);
+    }
+
+    /**
+     * Reads the next code from in and returns its symbol. This is the one place that turns bits into symbols:
+     * the decode methods, the tails of decodeInterleaved and the block decoders all call it. Codes of up to
+     * TABLE_BITS bits take a single table probe; longer ones finish by walking the trie one bit at a time.
+     */
+    int readSymbol(BitReader in) {
+        int entry = table[(int) (in.peekBits() >>> (64 - TABLE_BITS))];
+        if (entry > 0) {
+            in.skipBits(entry & 0xFF);
+            return entry >>> 8;
+        }
+        return readLongSymbol(in, entry);
+    }
+
+    /**
+     * Finishes a code longer than TABLE_BITS bits (or rejects an invalid one) for readSymbol, which stays
+     * small enough to be inlined into the decode loops
+     */
+    private int readLongSymbol(BitReader in, int entry) {
+        if (entry == 0) {
+            throw new IllegalArgumentException("Invalid code in encoded data");
+        }
+        in.skipBits(TABLE_BITS);
+        int node = -entry;
+        while (true) {
+            if (in.bitsRemaining() == 0) {
+                throw new IllegalArgumentException("Encoded data ends in the middle of a code");
+            }
+            int next = trie[2 * node + (int) in.readBits(1)];
+            if (next < 0) {
+                return -next - 1;
+            } else if (next == 0) {
+                throw new IllegalArgumentException("Invalid code in encoded data");
+            }
+            node = next;
+        }
+    }
+
+    /**
+     * Decodes the four packed streams of an interleaved block (see InterleavedBlock) into length bytes of
+     * out, starting at outOffset. Stream i is stored in encoded[starts[i] .. starts[i + 1]), starting with its
+     * padding count byte, and holds the i-th quarter of the output: (length + 3) / 4 symbols for the first
+     * streams and the rest for the last one. Every code must be at most TABLE_BITS bits long.
+     *
+     * The four streams have independent bit cursors, so the main loop refills all of them with one 8 byte load
+     * each and then decodes four symbols from every stream. The table probes of the different streams do not
+     * depend on each other and the CPU overlaps them, instead of waiting for each code length before it can
+     * find the next code as in readSymbol.
+     */
+    public void decodeInterleaved(byte[] encoded, int[] starts, byte[] out, int outOffset, int length) {
+        if (maxLength > TABLE_BITS) {
+            throw new IllegalArgumentException("Interleaved streams need codes of at most " + TABLE_BITS + " bits");
+        }
+        int segment = (length + 3) / 4;
+        int end = outOffset + length;
+        int o0 = outOffset;
+        int o1 = Math.min(end, o0 + segment);
+        int o2 = Math.min(end, o1 + segment);
+        int o3 = Math.min(end, o2 + segment);
+        int p0 = starts[0] + 1;
+        int p1 = starts[1] + 1;
+        int p2 = starts[2] + 1;
+        int p3 = starts[3] + 1;
+        int e0 = starts[1];
+        int e1 = starts[2];
+        int e2 = starts[3];
+        int e3 = starts[4];
+        long b0 = 0; // next unread bits of each stream, left aligned
+        long b1 = 0;
+        long b2 = 0;
+        long b3 = 0;
+        int c0 = 0;
+        int c1 = 0;
+        int c2 = 0;
+        int c3 = 0;
+
+        // the last quarter is the shortest, so while it has 4 symbols left every quarter does
+        while (o3 + 4 <= end && p0 <= e0 - 8 && p1 <= e1 - 8 && p2 <= e2 - 8 && p3 <= e3 - 8) {
+            // every refill leaves at least 56 bits, enough for 4 codes of at most TABLE_BITS bits
+            int k = (63 - c0) >>> 3;
+            b0 = (b0 | ((long) LONG_VIEW.get(encoded, p0) >>> c0)) & (-1L << (64 - c0 - 8 * k));
+            c0 += 8 * k;
+            p0 += k;
+            k = (63 - c1) >>> 3;
+            b1 = (b1 | ((long) LONG_VIEW.get(encoded, p1) >>> c1)) & (-1L << (64 - c1 - 8 * k));
+            c1 += 8 * k;
+            p1 += k;
+            k = (63 - c2) >>> 3;
+            b2 = (b2 | ((long) LONG_VIEW.get(encoded, p2) >>> c2)) & (-1L << (64 - c2 - 8 * k));
+            c2 += 8 * k;
+            p2 += k;
+            k = (63 - c3) >>> 3;
+            b3 = (b3 | ((long) LONG_VIEW.get(encoded, p3) >>> c3)) & (-1L << (64 - c3 - 8 * k));
+            c3 += 8 * k;
+            p3 += k;
+
+            for (int i = 0; i < 4; i++) {
+                int x0 = table[(int) (b0 >>> (64 - TABLE_BITS))];
+                int x1 = table[(int) (b1 >>> (64 - TABLE_BITS))];
+                int x2 = table[(int) (b2 >>> (64 - TABLE_BITS))];
+                int x3 = table[(int) (b3 >>> (64 - TABLE_BITS))];
+                if ((x0 == 0) | (x1 == 0) | (x2 == 0) | (x3 == 0)) {
+                    throw new IllegalArgumentException("Invalid code in encoded data");
+                }
+                out[o0++] = (byte) (x0 >>> 8);
+                out[o1++] = (byte) (x1 >>> 8);
+                out[o2++] = (byte) (x2 >>> 8);
+                out[o3++] = (byte) (x3 >>> 8);
+                b0 <<= x0 & 0xFF;
+                b1 <<= x1 & 0xFF;
+                b2 <<= x2 & 0xFF;
+                b3 <<= x3 & 0xFF;
+                c0 -= x0 & 0xFF;
+                c1 -= x1 & 0xFF;
+                c2 -= x2 & 0xFF;
+                c3 -= x3 & 0xFF;
+            }
+        }
+
+        int segmentEnd = Math.min(end, outOffset + segment);
+        decodeTail(encoded, starts[0], e0, p0, c0, out, o0, segmentEnd);
+        decodeTail(encoded, starts[1], e1, p1, c1, out, o1, Math.min(end, segmentEnd + segment));
+        decodeTail(encoded, starts[2], e2, p2, c2, out, o2, Math.min(end, segmentEnd + 2 * segment));
+        decodeTail(encoded, starts[3], e3, p3, c3, out, o3, end);
+    }
+
+    /**
+     * Decodes the packed byte array and returns the decoded characters as a String
+     */
+    public String decodeToString(byte[] encoded) {
+        char[] out = new char[maxDecodedLength(encoded)];
+        int n = decode(encoded, out);
+        return new String(out, 0, n);
+    }
+
+    /**
+     * Decodes the code at the start of bits (unread bits, left aligned) and returns (symbol << 8) | codeLength,
+     * or -1 if bits does not start with a valid code. For callers that keep their own bit buffer, such as
+     * stream decoders; they must check the code length against the number of bits they actually hold.
+     */
+    int decodeNext(long bits) {
+        int entry = table[(int) (bits >>> (64 - TABLE_BITS))];
+        if (entry > 0) {
+            return entry;
+        }
+        if (entry == 0) {
+            return -1;
+        }
+        int node = -entry;
+        for (int codeLength = TABLE_BITS + 1; codeLength <= CodeTable.MAX_CODE_LENGTH; codeLength++) {
+            int next = trie[2 * node + (int) ((bits >>> (64 - codeLength)) & 1)];
+            if (next < 0) {
+                return ((-next - 1) << 8) | codeLength;
+            } else if (next == 0) {
+                return -1;
+            }
+            node = next;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the number of meaningful bits in a packed byte array, i.e. everything after the padding count
+     * byte except the padding itself.
+     */
+    static long validBits(byte[] encoded) {
+        return validBits(encoded, 0, encoded.length);
+    }
+
+    static long validBits(byte[] encoded, int offset, int length) {
+        return validBits(length > 0 ? encoded[offset] : 0, length);
+    }
+
+    static long validBits(ByteBuffer encoded, int offset, int length) {
+        return validBits(length > 0 ? encoded.get(offset) : 0, length);
+    }
+
+    private static long validBits(byte padding, int length) {
+        if (length <= 1) {
+            return 0;
+        }
+        if (padding < 0 || padding > 7) {
+            throw new IllegalArgumentException("Invalid padding count: " + padding);
+        }
+        return 8L * (length - 1) - padding;
+    }
+
+    /**
+     * Finishes one stream of decodeInterleaved: skips the bits the main loop already decoded (everything
+     * before pos except the bitCount bits still buffered), decodes symbols into out[n .. outEnd) and checks
+     * that the stream holds exactly those symbols.
+     */
+    private void decodeTail(byte[] encoded, int start, int end, int pos, int bitCount, byte[] out, int n,
+                            int outEnd) {
+        BitReader in = new BitReader(encoded, start, end - start);
+        long consumed = 8L * (pos - start - 1) - bitCount;
+        if (consumed > in.bitsRemaining()) {
+            throw new IllegalArgumentException("Encoded data ends in the middle of a code");
+        }
+        in.skip(consumed);
+        while (n < outEnd) {
+            out[n++] = (byte) readSymbol(in);
+        }
+        if (in.bitsRemaining() != 0) {
+            throw new IllegalArgumentException("Encoded stream has " + in.bitsRemaining() + " bits left over");
+        }
+    }
+
+    private static void checkOutput(int outLength, int outOffset, int count) {
+        if (count < 0 || outOffset < 0 || outLength - outOffset < count) {
+            throw new IllegalArgumentException("Output too small for " + count + " symbols");
+        }
+    }
+
+    private static void checkFinished(BitReader in) {
+        if (in.bitsRemaining() != 0) {
+            throw new IllegalArgumentException("Encoded data has " + in.bitsRemaining() + " bits left over");
+        }
+    }
+
+    private int newTrieNode() {
+        if (2 * trieNodes + 2 > trie.length) {
+            trie = Arrays.copyOf(trie, trie.length * 2);
+        }
+        return trieNodes++;
+    }
+
+    /**
+     * Adds the lowest numBits bits of code to the trie starting at node, ending in a leaf for symbol
+     */
+    private void insertIntoTrie(int node, long code, int numBits, int symbol) {
+        for (int i = numBits - 1; i > 0; i--) {
+            int slot = 2 * node + (int) ((code >>> i) & 1);
+            if (trie[slot] < 0) {
+                throw new IllegalArgumentException("Codes are not prefix-free");
+            }
+            if (trie[slot] == 0) {
+                int child = newTrieNode();
+                trie[slot] = child;
+            }
+            node = trie[slot];
+        }
+        int slot = 2 * node + (int) (code & 1);
+        if (trie[slot] != 0) {
+            throw new IllegalArgumentException("Codes are not prefix-free");
+        }
+        trie[slot] = -(symbol + 1);
+    }
+}
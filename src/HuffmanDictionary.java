@@ -0,0 +1,182 @@
+/**
+ * This class implements a pretrained code for compressing many small, similar messages. The code is trained
+ * once from a sample corpus and identified by a numeric id; messages compressed against it carry only the id
+ * and their length instead of a code table, and need no per-message tree building or decoder setup.
+ *
+ * Every byte value gets a code (unseen bytes are counted once during training), so any message can be
+ * compressed, although messages unlike the samples compress poorly. A compressed message is laid out as:
+ *
+ *   varint  dictionary id
+ *   varint  number of uncompressed bytes
+ *   packed encoded bytes (see BitWriter)
+ *
+ * where a varint holds 7 bits per byte, least significant group first, with the high bit set on all but the
+ * last byte. A saved dictionary is MAGIC, the int id and the CanonicalCode length header. Dictionaries are
+ * immutable and can be shared between threads; DictionaryCache keeps recently used ones in memory.
+ */
+
+import java.util.Arrays;
+import java.util.List;
+
+public class HuffmanDictionary {
+
+    public static final int MAGIC = 0x48444354;
+
+    private final int id;
+    private final int[] lengths;
+    private final CodeTable codes;
+    private final HuffmanDecoder decoder;
+
+    /**
+     * Creates the dictionary with the given id for byte code lengths (indexed by byte value). Every byte value
+     * must have a code.
+     */
+    public HuffmanDictionary(int id, int[] lengths) {
+        if (id < 0) {
+            throw new IllegalArgumentException("Dictionary id must not be negative: " + id);
+        }
+        if (lengths.length != 256) {
+            throw new IllegalArgumentException("Dictionary needs a code for all 256 byte values");
+        }
+        for (int length : lengths) {
+            if (length == 0) {
+                throw new IllegalArgumentException("Dictionary needs a code for all 256 byte values");
+            }
+        }
+        this.id = id;
+        this.lengths = lengths.clone();
+        this.codes = CanonicalCode.fromLengths(this.lengths);
+        this.decoder = new HuffmanDecoder(codes);
+    }
+
+    /**
+     * Trains a dictionary on the sample messages, with codes of at most HuffmanBlock.DEFAULT_MAX_CODE_LENGTH bits
+     */
+    public static HuffmanDictionary train(int id, List<byte[]> samples) {
+        long[] frequencies = new long[256];
+        for (int b = 0; b < 256; b++) {
+            frequencies[b] = 1;
+        }
+        for (byte[] sample : samples) {
+            Histogram.addBytes(sample, 0, sample.length, frequencies);
+        }
+        return new HuffmanDictionary(id, LengthLimitedCode.codeLengths(frequencies,
+                HuffmanBlock.DEFAULT_MAX_CODE_LENGTH));
+    }
+
+    public int id() {
+        return id;
+    }
+
+    /**
+     * Compresses message against this dictionary
+     */
+    public byte[] compress(byte[] message) {
+        return compress(message, 0, message.length);
+    }
+
+    /**
+     * Compresses message[offset .. offset + length) against this dictionary
+     */
+    public byte[] compress(byte[] message, int offset, int length) {
+        byte[] encoded = HuffmanCode.encodeBytes(message, offset, length, codes);
+        byte[] out = new byte[varintSize(id) + varintSize(length) + encoded.length];
+        int pos = writeVarint(out, 0, id);
+        pos = writeVarint(out, pos, length);
+        System.arraycopy(encoded, 0, out, pos, encoded.length);
+        return out;
+    }
+
+    /**
+     * Takes the output of compress and returns the original message. Throws IllegalArgumentException if the
+     * message was compressed against a different dictionary or is corrupt.
+     */
+    public byte[] decompress(byte[] compressed) {
+        int[] pos = new int[1];
+        int messageId = readVarint(compressed, pos);
+        if (messageId != id) {
+            throw new IllegalArgumentException("Message uses dictionary " + messageId + ", not " + id);
+        }
+        int length = readVarint(compressed, pos);
+        if (length > 8L * (compressed.length - pos[0])) {
+            throw new IllegalArgumentException("Message is too short for " + length + " bytes");
+        }
+        byte[] out = new byte[length];
+        decoder.decode(compressed, pos[0], compressed.length - pos[0], out, 0, length);
+        return out;
+    }
+
+    /**
+     * Returns the id of the dictionary a compressed message was compressed against
+     */
+    public static int messageId(byte[] compressed) {
+        return readVarint(compressed, new int[1]);
+    }
+
+    /**
+     * Serializes the dictionary so it can be stored and loaded with fromByteArray
+     */
+    public byte[] toByteArray() {
+        byte[] header = CanonicalCode.lengthsToByteArray(lengths);
+        byte[] out = new byte[8 + header.length];
+        HuffmanBlock.writeInt(out, 0, MAGIC);
+        HuffmanBlock.writeInt(out, 4, id);
+        System.arraycopy(header, 0, out, 8, header.length);
+        return out;
+    }
+
+    /**
+     * Takes the output of toByteArray and returns the dictionary
+     */
+    public static HuffmanDictionary fromByteArray(byte[] bytes) {
+        if (bytes.length < 8 || HuffmanBlock.readInt(bytes, 0) != MAGIC) {
+            throw new IllegalArgumentException("Not a Huffman dictionary");
+        }
+        int[] lengths = CanonicalCode.lengthsFromByteArray(bytes, 8, bytes.length - 8);
+        if (lengths.length < 256) {
+            lengths = Arrays.copyOf(lengths, 256);
+        }
+        return new HuffmanDictionary(HuffmanBlock.readInt(bytes, 4), lengths);
+    }
+
+    static int varintSize(int value) {
+        int size = 1;
+        while ((value >>>= 7) != 0) {
+            size++;
+        }
+        return size;
+    }
+
+    /**
+     * Writes value as a varint at out[pos] and returns the position after it
+     */
+    static int writeVarint(byte[] out, int pos, int value) {
+        while ((value & ~0x7F) != 0) {
+            out[pos++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out[pos++] = (byte) value;
+        return pos;
+    }
+
+    /**
+     * Reads a non-negative varint at bytes[pos[0]] and advances pos[0] past it
+     */
+    static int readVarint(byte[] bytes, int[] pos) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            if (pos[0] >= bytes.length) {
+                throw new IllegalArgumentException("Message ends in the middle of a varint");
+            }
+            int b = bytes[pos[0]++];
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                if (value < 0) {
+                    break;
+                }
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Invalid varint in message");
+    }
+}
@@ -0,0 +1,179 @@
+/**
+ * This class implements the single file compressed format: one self-describing file holding everything that is
+ * needed to get the original bytes back and to check that they are intact. A file is laid out as (numbers are
+ * big-endian):
+ *
+ *   int     MAGIC ("HUF1")
+ *   byte    format VERSION
+ *   long    original length n
+ *   int     size of the code length header, followed by the header (see CanonicalCode)
+ *   long    size of the encoded data, followed by the packed encoded bytes (see BitWriter)
+ *   int     CRC32C of the original bytes
+ *
+ * Everything is read front to back with one sequential pass over one file handle. The original length comes
+ * first, so the decoder allocates its output exactly once and knows where the data ends without relying on
+ * the padding count alone. The checksum is updated as the bytes are encoded and decoded.
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.CRC32C;
+
+public class HuffmanFile {
+
+    /** Identifies the single file format ("HUF1") */
+    public static final int MAGIC = 0x48554631;
+
+    /** Version of the layout described in the class comment */
+    public static final int VERSION = 1;
+
+    /**
+     * Compresses data with the default code length limit and returns the complete file contents
+     */
+    public static byte[] compress(byte[] data) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(data.length / 2 + 64);
+        try {
+            write(bytes, data, HuffmanBlock.DEFAULT_MAX_CODE_LENGTH);
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // cannot happen for a ByteArrayOutputStream
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Takes the output of compress and returns the original bytes
+     */
+    public static byte[] decompress(byte[] compressed) {
+        try {
+            return read(new ByteArrayInputStream(compressed));
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Compresses the file inputFileName into the single file outputFileName
+     */
+    public static void compressFile(String inputFileName, String outputFileName) throws IOException {
+        byte[] data;
+        try (InputStream in = new FileInputStream(inputFileName)) {
+            data = in.readAllBytes();
+        }
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(outputFileName))) {
+            write(out, data, HuffmanBlock.DEFAULT_MAX_CODE_LENGTH);
+        }
+    }
+
+    /**
+     * Decompresses the single file inputFileName into outputFileName
+     */
+    public static void decompressFile(String inputFileName, String outputFileName) throws IOException {
+        byte[] data;
+        try (InputStream in = new BufferedInputStream(new FileInputStream(inputFileName))) {
+            data = read(in);
+        }
+        try (OutputStream out = new FileOutputStream(outputFileName)) {
+            out.write(data);
+        }
+    }
+
+    /**
+     * Writes data in the single file format to out, with no code longer than maxCodeLength bits. out is not
+     * closed.
+     */
+    public static void write(OutputStream out, byte[] data, int maxCodeLength) throws IOException {
+        long[] frequencies = Histogram.ofBytes(data, 0, data.length);
+        int[] lengths = LengthLimitedCode.codeLengths(frequencies, maxCodeLength);
+        CodeTable table = CanonicalCode.fromLengths(lengths);
+        byte[] header = CanonicalCode.lengthsToByteArray(lengths);
+
+        // encode in slices so the checksum is updated while each slice is still in the cache
+        CRC32C crc = new CRC32C();
+        BitWriter writer = new BitWriter(data.length / 2);
+        for (int offset = 0; offset < data.length; offset += Histogram.CHUNK_SIZE) {
+            int end = Math.min(data.length, offset + Histogram.CHUNK_SIZE);
+            crc.update(data, offset, end - offset);
+            for (int i = offset; i < end; i++) {
+                int b = data[i] & 0xFF;
+                writer.writeBits(table.code(b), table.length(b));
+            }
+        }
+        byte[] encoded = writer.toByteArray();
+
+        DataOutputStream dataOut = new DataOutputStream(out);
+        dataOut.writeInt(MAGIC);
+        dataOut.writeByte(VERSION);
+        dataOut.writeLong(data.length);
+        dataOut.writeInt(header.length);
+        dataOut.write(header);
+        dataOut.writeLong(encoded.length);
+        dataOut.write(encoded);
+        dataOut.writeInt((int) crc.getValue());
+        dataOut.flush();
+    }
+
+    /**
+     * Reads one file in the single file format from in, checks it and returns the original bytes. Throws an
+     * IOException if the data is not in this format, is cut short or does not match its checksum.
+     */
+    public static byte[] read(InputStream in) throws IOException {
+        DataInputStream dataIn = new DataInputStream(in);
+        try {
+            if (dataIn.readInt() != MAGIC) {
+                throw new IOException("Not a Huffman file");
+            }
+            int version = dataIn.readUnsignedByte();
+            if (version != VERSION) {
+                throw new IOException("Unsupported Huffman file version: " + version);
+            }
+            long length = dataIn.readLong();
+            if (length < 0 || length > Integer.MAX_VALUE - 8) {
+                throw new IOException("Unsupported original length: " + length);
+            }
+            int headerLength = dataIn.readInt();
+            if (headerLength < 0 || headerLength > CanonicalCode.maxHeaderLength(256)) {
+                throw new IOException("Corrupt code length header size: " + headerLength);
+            }
+            byte[] header = new byte[headerLength];
+            dataIn.readFully(header);
+            long encodedLength = dataIn.readLong();
+            if (encodedLength < 0 || encodedLength > Integer.MAX_VALUE - 8
+                    || encodedLength > HuffmanBlock.maxEncodedLength(length)) {
+                throw new IOException("Corrupt encoded data size: " + encodedLength);
+            }
+            byte[] encoded = new byte[(int) encodedLength];
+            dataIn.readFully(encoded);
+            int expectedCrc = dataIn.readInt();
+
+            byte[] out = new byte[(int) length];
+            try {
+                int[] lengths = CanonicalCode.lengthsFromByteArray(header);
+                if (lengths.length > 256) {
+                    throw new IOException("Code length header has a code for symbol " + (lengths.length - 1));
+                }
+                new HuffmanDecoder(CanonicalCode.fromLengths(lengths)).decode(encoded, 0, encoded.length, out, 0,
+                        out.length);
+            } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+                throw new IOException("Corrupt encoded data", e);
+            }
+            CRC32C crc = new CRC32C();
+            crc.update(out, 0, out.length);
+            if ((int) crc.getValue() != expectedCrc) {
+                throw new IOException("Checksum mismatch, the data is corrupt");
+            }
+            return out;
+        } catch (EOFException e) {
+            throw new IOException("Huffman file is cut short", e);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/**
+ * This class implements an input stream that decompresses data written by HuffmanOutputStream. Blocks are
+ * read and decoded one at a time, so memory use is bounded by the block size of the compressed stream.
+ */
+
+import java.io.DataInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+public class HuffmanInputStream extends FilterInputStream {
+
+    private final DataInputStream data;
+    private byte[] decoded;
+    private int position;
+    private int limit;
+    private boolean endOfStream;
+
+    public HuffmanInputStream(InputStream in) {
+        super(in);
+        this.data = new DataInputStream(in);
+        this.decoded = new byte[0];
+        this.position = 0;
+        this.limit = 0;
+        this.endOfStream = false;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (position == limit && !nextBlock()) {
+            return -1;
+        }
+        return decoded[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || off + len > b.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (len == 0) {
+            return 0;
+        }
+        if (position == limit && !nextBlock()) {
+            return -1;
+        }
+        int n = Math.min(len, limit - position);
+        System.arraycopy(decoded, position, b, off, n);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = 0;
+        while (skipped < n && (position < limit || nextBlock())) {
+            int step = (int) Math.min(n - skipped, limit - position);
+            position += step;
+            skipped += step;
+        }
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return limit - position;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+
+    /**
+     * Reads and decodes the next block. Returns false at the end of the stream.
+     */
+    private boolean nextBlock() throws IOException {
+        if (endOfStream) {
+            return false;
+        }
+        byte[] block = HuffmanBlock.read(data);
+        if (block == null) {
+            endOfStream = true;
+            return false;
+        }
+        int length = HuffmanBlock.decodedLength(block, 0);
+        if (decoded.length < length) {
+            decoded = new byte[length];
+        }
+        try {
+            limit = HuffmanBlock.decode(block, 0, decoded, 0);
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new IOException("Corrupt compressed block", e);
+        }
+        position = 0;
+        return true;
+    }
+}
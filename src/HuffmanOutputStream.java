@@ -0,0 +1,114 @@
+/**
+ * This class implements an output stream that Huffman compresses everything written to it. Data is collected
+ * into blocks of blockSize bytes; each full block gets its own code built from that block's frequencies and is
+ * written out as a HuffmanBlock. Memory use is bounded by the block size no matter how much data flows
+ * through, so arbitrarily large files and sockets can be compressed. Read the data back with
+ * HuffmanInputStream.
+ */
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+public class HuffmanOutputStream extends FilterOutputStream {
+
+    private final byte[] block;
+    private final int maxCodeLength;
+    private int count;
+    private boolean finished;
+
+    public HuffmanOutputStream(OutputStream out) {
+        this(out, HuffmanBlock.DEFAULT_BLOCK_SIZE, HuffmanBlock.DEFAULT_MAX_CODE_LENGTH);
+    }
+
+    /**
+     * Creates a stream that compresses blocks of blockSize bytes with codes of at most maxCodeLength bits
+     * (8 to 64; every byte value must fit in a code of that length)
+     */
+    public HuffmanOutputStream(OutputStream out, int blockSize, int maxCodeLength) {
+        super(out);
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("Block size must be positive: " + blockSize);
+        }
+        if (maxCodeLength < 8 || maxCodeLength > CodeTable.MAX_CODE_LENGTH) {
+            throw new IllegalArgumentException("Max code length must be between 8 and "
+                    + CodeTable.MAX_CODE_LENGTH + ": " + maxCodeLength);
+        }
+        this.block = new byte[blockSize];
+        this.maxCodeLength = maxCodeLength;
+        this.count = 0;
+        this.finished = false;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        block[count++] = (byte) b;
+        if (count == block.length) {
+            writeBlock();
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        if (off < 0 || len < 0 || off + len > b.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        while (len > 0) {
+            int n = Math.min(len, block.length - count);
+            System.arraycopy(b, off, block, count, n);
+            count += n;
+            off += n;
+            len -= n;
+            if (count == block.length) {
+                writeBlock();
+            }
+        }
+    }
+
+    /**
+     * Compresses any buffered bytes as a (possibly short) block and flushes the underlying stream
+     */
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        writeBlock();
+        out.flush();
+    }
+
+    /**
+     * Writes any buffered bytes and the end of stream marker without closing the underlying stream
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        writeBlock();
+        out.write(HuffmanBlock.endMarker());
+        finished = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void writeBlock() throws IOException {
+        if (count == 0) {
+            return;
+        }
+        out.write(HuffmanBlock.encode(block, 0, count, maxCodeLength));
+        count = 0;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (finished) {
+            throw new IOException("Stream already finished");
+        }
+    }
+}
@@ -3,34 +3,53 @@
  */
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Stack;
 
 public class HuffmanTree implements Comparable<HuffmanTree> {
 
 
-    private int freq;
+    private long freq;
     private HuffmanTree left;
     private HuffmanTree right;
     private Character value = '\0';
     private boolean isLeaf;
-    private int depth;
-    private ArrayList<Boolean> code;
 
 
-    public HuffmanTree(char value, int freq) {
+    public HuffmanTree(char value, long freq) {
         this.freq = freq;
         this.value = value;
         this.isLeaf = true;
         this.left = null;
         this.right = null;
-        this.code = new ArrayList<Boolean>();
     }
 
     public boolean isLeafNode() {
         return this.isLeaf;
     }
 
+    /**
+     * Returns the left child, or null for a leaf
+     */
+    public HuffmanTree getLeft() {
+        return this.left;
+    }
+
+    /**
+     * Returns the right child, or null for a leaf
+     */
+    public HuffmanTree getRight() {
+        return this.right;
+    }
+
+    /**
+     * Returns the character stored in a leaf
+     */
+    public char getValue() {
+        return this.value;
+    }
+
     /**
      * Merges HuffmanTrees left and right under a shared parent, and sets the frequency of the parent
      * to be the sum of the left and right frequencies. Then returns the shared parent.
@@ -43,38 +62,82 @@ public class HuffmanTree implements Comparable<HuffmanTree> {
      * Only call this method on a full Huffman Tree. Returns a mapping between Characters and their
      * encodings. The encodings are represented as boolean array lists (e.g. the binary string
      * 00101 would be the boolean arraylist {false, false, true, false, true}
+     * A tree with a single leaf gives its character the 1 bit code {false}, as in getCodeLengths.
      */
     public HashMap<Character, ArrayList<Boolean>> getEncodings() {
 
+        // the code of each node is kept on a stack next to the node instead of in the tree itself, so the
+        // tree is never modified and can be shared between threads
         HashMap<Character, ArrayList<Boolean>> encodings = new HashMap<Character, ArrayList<Boolean>>();
         Stack<HuffmanTree> nodes = new Stack<HuffmanTree>();
+        Stack<ArrayList<Boolean>> codes = new Stack<ArrayList<Boolean>>();
         nodes.push(this);
-        this.depth = 0;
+        codes.push(new ArrayList<Boolean>());
+        if (this.isLeaf) {
+            codes.peek().add(false);
+        }
 
         while (!nodes.isEmpty()) {
             HuffmanTree next = nodes.pop();
+            ArrayList<Boolean> code = codes.pop();
 
             if (next.right != null) {
-                next.right.depth = next.depth + 1;
-                next.right.code = new ArrayList<Boolean>(next.code);
-                next.right.code.add(next.depth, true);
+                ArrayList<Boolean> rightCode = new ArrayList<Boolean>(code);
+                rightCode.add(true);
                 nodes.push(next.right);
+                codes.push(rightCode);
             }
             if (next.left != null) {
-                next.left.depth = next.depth + 1;
-                next.left.code = new ArrayList<Boolean>(next.code);
-                next.left.code.add(next.depth, false);
+                ArrayList<Boolean> leftCode = new ArrayList<Boolean>(code);
+                leftCode.add(false);
                 nodes.push(next.left);
+                codes.push(leftCode);
             }
 
             if (next.isLeaf) {
-                encodings.put(next.value, next.code);
+                encodings.put(next.value, code);
             }
         }
 
         return encodings;
     }
 
+    /**
+     * Returns the length of the code for each character, indexed by character (0 for characters not in the
+     * tree). Unlike getEncodings this does not copy a code list for every node.
+     * A tree with a single leaf gets a 1 bit code so that every character takes up at least one bit.
+     */
+    public int[] getCodeLengths() {
+        int size = 0;
+        Stack<HuffmanTree> nodes = new Stack<HuffmanTree>();
+        Stack<Integer> depths = new Stack<Integer>();
+        nodes.push(this);
+        depths.push(0);
+        int[] lengths = new int[0];
+
+        while (!nodes.isEmpty()) {
+            HuffmanTree next = nodes.pop();
+            int depth = depths.pop();
+
+            if (next.isLeaf) {
+                if (next.value >= lengths.length) {
+                    lengths = Arrays.copyOf(lengths, Math.max(next.value + 1, 2 * lengths.length));
+                }
+                lengths[next.value] = Math.max(depth, 1);
+                size = Math.max(size, next.value + 1);
+            }
+            if (next.right != null) {
+                nodes.push(next.right);
+                depths.push(depth + 1);
+            }
+            if (next.left != null) {
+                nodes.push(next.left);
+                depths.push(depth + 1);
+            }
+        }
+        return Arrays.copyOf(lengths, size);
+    }
+
     /**
      * Private constructor for use with the merge method
      */
@@ -83,7 +146,6 @@ public class HuffmanTree implements Comparable<HuffmanTree> {
         this.isLeaf = false;
         this.left = left;
         this.right = right;
-        this.code = new ArrayList<Boolean>();
     }
 
     /**
@@ -94,7 +156,6 @@ public class HuffmanTree implements Comparable<HuffmanTree> {
         this.isLeaf = false;
         this.left = null;
         this.right = null;
-        this.code = new ArrayList<Boolean>();
     }
 
     /**
@@ -112,14 +173,18 @@ public class HuffmanTree implements Comparable<HuffmanTree> {
     }
 
     /**
-     * Computes a compact binary representation of a HuffmanTree to be stored on a file system
+     * Computes a compact binary representation of a HuffmanTree to be stored on a file system. The tree is
+     * written in pre-order: a 0 bit for an internal node, and a 1 bit followed by the 8 bit character for a
+     * leaf. Every character is stored in 8 bits, so characters above 255 are rejected (use CanonicalCode for
+     * those).
      */
     public static byte[] huffmanTreeToByteArray(HuffmanTree root) {
+        long start = System.nanoTime();
 
         Stack<HuffmanTree> path = new Stack<HuffmanTree>();
         path.push(root);
 
-        String bitString = "";
+        BitWriter writer = new BitWriter();
 
         while (!path.isEmpty()) {
             HuffmanTree next = path.pop();
@@ -128,14 +193,19 @@ public class HuffmanTree implements Comparable<HuffmanTree> {
                 path.push(next.right);
                 path.push(next.left);
 
-                bitString = bitString.concat("0");
+                writer.writeBit(false);
             } else {
                 assert next.isLeaf;
-                String code = BinaryHelper.binaryAsciiCodeFromChar(next.value);
-                bitString = bitString.concat("1".concat(code));
+                if (next.value > 0xFF) {
+                    throw new IllegalArgumentException("Character does not fit in the tree format: " + (int) next.value);
+                }
+                writer.writeBit(true);
+                writer.writeBits(next.value, 8);
             }
         }
-        return BinaryHelper.byteArrayFromBitString(bitString);
+        byte[] bytes = writer.toByteArray();
+        Metrics.get().recordPhase(CodecMetrics.Phase.SERIALIZE, System.nanoTime() - start);
+        return bytes;
     }
 
     /**
@@ -144,49 +214,82 @@ public class HuffmanTree implements Comparable<HuffmanTree> {
     public static HuffmanTree huffmanTreeFromByteArray(byte[] byteArray) {
 
         HuffmanTree root = null;
-        String bitString = BinaryHelper.bitStringFromByteArray(byteArray);
+        BitReader reader = new BitReader(byteArray);
         Stack<HuffmanTree> path = new Stack<HuffmanTree>();
 
-        for (int i=0; i < bitString.length(); i++) {
-            Character c = bitString.charAt(i);
-            if (c == '0') {
-                HuffmanTree newNode = new HuffmanTree();
+        while (reader.bitsRemaining() > 0) {
+            boolean leaf = reader.readBit();
+            HuffmanTree newNode;
+            if (!leaf) {
+                newNode = new HuffmanTree();
+            } else {
+                // next 8 bits are the character
+                newNode = new HuffmanTree((char) reader.readBits(8), 0);
+            }
 
-                if (root == null) {
-                    root = newNode;
-                } else if (path.isEmpty()) {
-                    break;
-                } else if (path.peek().left == null) {
-                    path.peek().left = newNode;
-                } else if (path.peek().right == null) {
-                    path.pop().right = newNode;
-                }
+            if (root == null) {
+                root = newNode;
+            } else if (path.isEmpty()) {
+                break;
+            } else if (path.peek().left == null) {
+                path.peek().left = newNode;
+            } else if (path.peek().right == null) {
+                path.pop().right = newNode;
+            }
+            if (!leaf) {
                 path.push(newNode);
+            }
+        }
+        return root;
+    }
 
-            } else {
-                // Read next 8 bits and get character
-                String byteString = bitString.substring(i + 1, i + 9);
-                //byte[] charBytes = BinaryHelper.byteArrayFromBitString(byteString);
-                //char value = (char) charBytes[0];
-                char value = (char) BinaryHelper.byteFromBitString(byteString);
-                HuffmanTree newNode = new HuffmanTree(value, 0);
-
-                if (root == null) {
-                    root = newNode;
-                } else if (path.isEmpty()) {
-                    break;
-                } else if (path.peek().left == null) {
-                    path.peek().left = newNode;
-                } else if (path.peek().right == null) {
-                    path.pop().right = newNode;
+
+    /**
+     * Builds the HuffmanTree of the canonical code for the given code lengths (see CanonicalCode). Only the
+     * shape of the tree is known, so all frequencies are 0. A single character with a 1 bit code gives a tree
+     * that is just a leaf.
+     */
+    public static HuffmanTree fromCodeLengths(int[] lengths) {
+        CodeTable codes = CanonicalCode.fromLengths(lengths);
+        HuffmanTree root = new HuffmanTree();
+        int count = 0;
+        char only = '\0';
+
+        for (int symbol = 0; symbol < codes.size(); symbol++) {
+            int length = codes.length(symbol);
+            if (length == 0) {
+                continue;
+            }
+            count++;
+            only = (char) symbol;
+            long code = codes.code(symbol);
+            HuffmanTree node = root;
+            for (int i = length - 1; i > 0; i--) {
+                boolean bit = ((code >>> i) & 1) == 1;
+                HuffmanTree child = (bit ? node.right : node.left);
+                if (child == null) {
+                    child = new HuffmanTree();
+                    if (bit) {
+                        node.right = child;
+                    } else {
+                        node.left = child;
+                    }
                 }
-                i += 8;
+                node = child;
             }
+            if ((code & 1) == 1) {
+                node.right = new HuffmanTree((char) symbol, 0);
+            } else {
+                node.left = new HuffmanTree((char) symbol, 0);
+            }
+        }
+
+        if (count == 1) {
+            return new HuffmanTree(only, 0);
         }
         return root;
     }
 
-
     /**
      * Helper method that returns true if tree1 and tree2 will generate identical Huffman Codes
      */
@@ -211,7 +314,7 @@ public class HuffmanTree implements Comparable<HuffmanTree> {
             HuffmanTree s1next = s1.pop();
             HuffmanTree s2next = s2.pop();
 
-            if (s1next.value != s2next.value) {
+            if (!s1next.value.equals(s2next.value)) {
                 return false;
             }
 
@@ -239,11 +342,17 @@ public class HuffmanTree implements Comparable<HuffmanTree> {
      * Takes a binaryString that represents characters encoded using codingTree and reconstructs the original String.
      */
     public static String decodeBinaryString(String binaryString, HuffmanTree codingTree) {
+        long start = System.nanoTime();
         HuffmanTree currentNode = codingTree;
         char[] binStr = binaryString.toCharArray();
-        String decoded = "";
+        StringBuilder decoded = new StringBuilder();
         for (int i = 0; i < binStr.length; i++){
             char bit = binStr[i]; // helps navigate tree. 0 is left, 1 is right.
+            // a tree that is a single leaf has the 1 bit code 0 for its only character
+            if(codingTree.isLeaf){
+                decoded.append(codingTree.value.charValue());
+                continue;
+            }
             // go left
             if(bit == '0'){
                 currentNode = currentNode.left;
@@ -254,11 +363,22 @@ public class HuffmanTree implements Comparable<HuffmanTree> {
             }
             // isLeaf means that node holds a character and we are at the bottom of the tree
             if(currentNode.isLeaf){
-                String value = currentNode.value.toString(); // change character to string
-                decoded += value; // adds character to string
+                decoded.append(currentNode.value.charValue()); // adds character to string
                 currentNode = codingTree; //reset back to top
             }
         }
-        return decoded;
+        CodecMetrics metrics = Metrics.get();
+        metrics.recordPhase(CodecMetrics.Phase.DECODE, System.nanoTime() - start);
+        metrics.recordBytes((binStr.length + 7) / 8, decoded.length());
+        return decoded.toString();
+    }
+
+    /**
+     * Takes the packed byte array output from HuffmanCode.encodeCharactersToByteArray (or
+     * BinaryHelper.byteArrayFromBitString) and reconstructs the original String. Uses a HuffmanDecoder, which
+     * decodes up to HuffmanDecoder.TABLE_BITS bits per table lookup instead of one tree step per bit.
+     */
+    public static String decodeByteArray(byte[] encoded, HuffmanTree codingTree) {
+        return new HuffmanDecoder(codingTree).decodeToString(encoded);
     }
 }
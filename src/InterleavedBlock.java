@@ -0,0 +1,153 @@
+/**
+ * This class implements self-contained blocks whose encoded data is split into four independent bitstreams,
+ * in the style of the four stream mode of zstd's Huff0. The input is cut into four quarters that are encoded
+ * with the same canonical code, and the sizes of the first three streams are stored up front so the decoder
+ * can find all of them and advance four bit cursors at once (see HuffmanDecoder.decodeInterleaved). Codes are
+ * limited to HuffmanDecoder.TABLE_BITS bits so every symbol is resolved by a single table probe. A block is
+ * laid out as (ints are 4 byte big-endian):
+ *
+ *   int    number of uncompressed bytes n (0 marks an empty block, nothing follows)
+ *   int    size of the code length header, followed by the header (see CanonicalCode)
+ *   int    size of the encoded data, which is made of:
+ *   int[3] sizes of streams 0 to 2 (stream 3 takes the rest of the encoded data)
+ *          streams 0 to 3, each a packed byte array (see BitWriter) holding (n + 3) / 4 symbols, except for
+ *          the last stream which holds the symbols that are left
+ */
+
+public class InterleavedBlock {
+
+    /** Number of bitstreams per block */
+    public static final int STREAMS = 4;
+
+    /** Longest code length the four stream decoder supports */
+    public static final int MAX_CODE_LENGTH = HuffmanDecoder.TABLE_BITS;
+
+    private static final int JUMP_TABLE_SIZE = 4 * (STREAMS - 1);
+
+    /**
+     * Compresses data[offset .. offset + length) into a single block with codes of at most MAX_CODE_LENGTH bits
+     */
+    public static byte[] encode(byte[] data, int offset, int length) {
+        return encode(data, offset, length, MAX_CODE_LENGTH);
+    }
+
+    /**
+     * Compresses data[offset .. offset + length) into a single block, with no code longer than maxCodeLength
+     * (8 to MAX_CODE_LENGTH)
+     */
+    public static byte[] encode(byte[] data, int offset, int length, int maxCodeLength) {
+        if (maxCodeLength < 8 || maxCodeLength > MAX_CODE_LENGTH) {
+            throw new IllegalArgumentException("Max code length must be between 8 and " + MAX_CODE_LENGTH + ": "
+                    + maxCodeLength);
+        }
+        if (length == 0) {
+            return new byte[4];
+        }
+        CodecMetrics metrics = Metrics.get();
+        long start = System.nanoTime();
+        long[] frequencies = Histogram.ofBytes(data, offset, length);
+        long counted = System.nanoTime();
+        int[] lengths = LengthLimitedCode.codeLengths(frequencies, maxCodeLength);
+        CodeTable table = CanonicalCode.fromLengths(lengths);
+        long built = System.nanoTime();
+        byte[] header = CanonicalCode.lengthsToByteArray(lengths);
+        long serialized = System.nanoTime();
+
+        int segment = (length + STREAMS - 1) / STREAMS;
+        byte[][] streams = new byte[STREAMS][];
+        int dataLength = JUMP_TABLE_SIZE;
+        for (int i = 0; i < STREAMS; i++) {
+            int from = Math.min(length, i * segment);
+            int to = Math.min(length, from + segment);
+            streams[i] = HuffmanCode.encodeBytes(data, offset + from, to - from, table);
+            dataLength += streams[i].length;
+        }
+
+        byte[] block = new byte[12 + header.length + dataLength];
+        HuffmanBlock.writeInt(block, 0, length);
+        HuffmanBlock.writeInt(block, 4, header.length);
+        System.arraycopy(header, 0, block, 8, header.length);
+        HuffmanBlock.writeInt(block, 8 + header.length, dataLength);
+        int position = 12 + header.length;
+        for (int i = 0; i < STREAMS - 1; i++) {
+            HuffmanBlock.writeInt(block, position + 4 * i, streams[i].length);
+        }
+        position += JUMP_TABLE_SIZE;
+        for (byte[] stream : streams) {
+            System.arraycopy(stream, 0, block, position, stream.length);
+            position += stream.length;
+        }
+        long encodeEnd = System.nanoTime();
+
+        metrics.recordPhase(CodecMetrics.Phase.COUNT, counted - start);
+        metrics.recordPhase(CodecMetrics.Phase.BUILD, built - counted);
+        metrics.recordPhase(CodecMetrics.Phase.SERIALIZE, serialized - built);
+        metrics.recordPhase(CodecMetrics.Phase.ENCODE, encodeEnd - serialized);
+        metrics.recordBytes(length, block.length);
+        Metrics.recordCode(metrics, frequencies, lengths);
+        return block;
+    }
+
+    /**
+     * Returns the number of uncompressed bytes held by the block that starts at block[offset]
+     */
+    public static int decodedLength(byte[] block, int offset) {
+        return HuffmanBlock.readInt(block, offset);
+    }
+
+    /**
+     * Returns the total size in bytes of the block that starts at block[offset]
+     */
+    public static int encodedLength(byte[] block, int offset) {
+        return HuffmanBlock.encodedLength(block, offset);
+    }
+
+    /**
+     * Decodes the block that starts at block[offset] into out, starting at outOffset, and returns the number
+     * of bytes written
+     */
+    public static int decode(byte[] block, int offset, byte[] out, int outOffset) {
+        long start = System.nanoTime();
+        int length = HuffmanBlock.readInt(block, offset);
+        if (length == 0) {
+            return 0;
+        }
+        if (length < 0 || outOffset < 0 || out.length - outOffset < length) {
+            throw new IllegalArgumentException("Block does not fit in the output: " + length + " bytes");
+        }
+        int headerLength = HuffmanBlock.readInt(block, offset + 4);
+        if (headerLength < 0 || offset + 12L + headerLength > block.length) {
+            throw new IllegalArgumentException("Corrupt block header length: " + headerLength);
+        }
+        int[] lengths = CanonicalCode.lengthsFromByteArray(block, offset + 8, headerLength);
+        if (lengths.length > 256) {
+            throw new IllegalArgumentException("Byte block has a code for symbol " + (lengths.length - 1));
+        }
+
+        int dataOffset = offset + 12 + headerLength;
+        int dataLength = HuffmanBlock.readInt(block, dataOffset - 4);
+        if (dataLength < JUMP_TABLE_SIZE + STREAMS || dataOffset + (long) dataLength > block.length) {
+            throw new IllegalArgumentException("Corrupt block data length: " + dataLength);
+        }
+        int[] starts = new int[STREAMS + 1];
+        starts[0] = dataOffset + JUMP_TABLE_SIZE;
+        for (int i = 0; i < STREAMS - 1; i++) {
+            int streamLength = HuffmanBlock.readInt(block, dataOffset + 4 * i);
+            if (streamLength < 1 || starts[i] + (long) streamLength > dataOffset + dataLength) {
+                throw new IllegalArgumentException("Corrupt stream length: " + streamLength);
+            }
+            starts[i + 1] = starts[i] + streamLength;
+        }
+        starts[STREAMS] = dataOffset + dataLength;
+        if (starts[STREAMS] <= starts[STREAMS - 1]) {
+            throw new IllegalArgumentException("Corrupt stream lengths");
+        }
+
+        new HuffmanDecoder(CanonicalCode.fromLengths(lengths)).decodeInterleaved(block, starts, out, outOffset,
+                length);
+        CodecMetrics metrics = Metrics.get();
+        metrics.recordPhase(CodecMetrics.Phase.DECODE, System.nanoTime() - start);
+        metrics.recordBytes(12L + headerLength + dataLength, length);
+        return length;
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ * This class implements the package-merge algorithm for computing optimal code lengths when no code may be
+ * longer than a given limit. A plain Huffman tree can get very deep for skewed (e.g. Fibonacci-like)
+ * frequencies; capping the length lets decoders always use a single, bounded lookup table, usually at a
+ * negligible cost in compression.
+ */
+
+public class LengthLimitedCode {
+
+    /**
+     * Takes frequencies indexed by symbol and returns code lengths indexed by symbol such that no length
+     * exceeds maxLength and the total encoded size is as small as possible. Symbols with frequency 0 get
+     * length 0. A single used symbol gets a 1 bit code.
+     */
+    public static int[] codeLengths(long[] frequencies, int maxLength) {
+        int n = 0;
+        for (long f : frequencies) {
+            if (f < 0) {
+                throw new IllegalArgumentException("Negative frequency: " + f);
+            }
+            if (f > 0) {
+                n++;
+            }
+        }
+        int[] lengths = new int[frequencies.length];
+        if (n == 0) {
+            return lengths;
+        }
+        if (maxLength < 1 || maxLength > CodeTable.MAX_CODE_LENGTH || (maxLength < 31 && n > (1 << maxLength))) {
+            throw new IllegalArgumentException(n + " symbols cannot be coded with at most " + maxLength + " bits");
+        }
+
+        // a plain Huffman code is optimal too, and for most inputs it already fits under the limit
+        int[] huffman = HuffmanBuilder.codeLengths(frequencies);
+        boolean fits = true;
+        for (int length : huffman) {
+            fits &= (length <= maxLength);
+        }
+        if (fits) {
+            return huffman;
+        }
+
+        // sort used symbols by increasing frequency
+        int[] symbols = HuffmanBuilder.sortedSymbols(frequencies);
+        long[] keys = HuffmanBuilder.weights(frequencies, symbols);
+
+        // isPackage[level][i] tells whether item i of the merged list for that level is a package of two
+        // items from the level below or one of the original leaves. Level maxLength - 1 is all leaves.
+        boolean[][] isPackage = new boolean[maxLength][];
+        isPackage[maxLength - 1] = new boolean[n];
+        long[] weights = keys.clone();
+        int size = n;
+        for (int level = maxLength - 2; level >= 0; level--) {
+            int packages = size / 2;
+            boolean[] merged = new boolean[n + packages];
+            long[] mergedWeights = new long[n + packages];
+            int leaf = 0;
+            int pack = 0;
+            int m = 0;
+            while (leaf < n || pack < packages) {
+                long packageWeight = (pack < packages ? weights[2 * pack] + weights[2 * pack + 1] : Long.MAX_VALUE);
+                if (leaf < n && keys[leaf] <= packageWeight) {
+                    mergedWeights[m++] = keys[leaf++];
+                } else {
+                    merged[m] = true;
+                    mergedWeights[m++] = packageWeight;
+                    pack++;
+                }
+            }
+            isPackage[level] = merged;
+            weights = mergedWeights;
+            size = m;
+        }
+
+        // the first 2n - 2 items of the top list make up the optimal solution. Every leaf taken at a level
+        // adds one bit to that symbol's code and every package taken pulls two items from the level below.
+        int take = 2 * n - 2;
+        for (int level = 0; level < maxLength && take > 0; level++) {
+            int leaves = 0;
+            int packages = 0;
+            for (int i = 0; i < take; i++) {
+                if (isPackage[level][i]) {
+                    packages++;
+                } else {
+                    leaves++;
+                }
+            }
+            for (int i = 0; i < leaves; i++) {
+                lengths[symbols[i]]++;
+            }
+            take = 2 * packages;
+        }
+        return lengths;
+    }
+}
@@ -0,0 +1,333 @@
+/**
+ * This class implements self-contained blocks compressed with an LZ77 front end followed by Huffman coding, in
+ * the style of deflate. Repeated substrings, which an order-0 code cannot exploit, are replaced by (length,
+ * distance) references to an earlier copy in the same block. Matches are found with a hash chain index over
+ * the last WINDOW_SIZE bytes: every position is filed under a hash of its first MIN_MATCH bytes, and the chain
+ * of earlier positions with the same hash is searched for the longest match.
+ *
+ * The parse is written as two symbol streams, each with its own length-limited canonical code (see
+ * LengthLimitedCode and CanonicalCode): literals and match lengths share one alphabet (0 to 255 are literal
+ * bytes, 256 and up are length codes), and distances have their own. Lengths and distances are grouped into
+ * codes with extra bits exactly as in deflate. A block is laid out as (ints are 4 byte big-endian):
+ *
+ *   int  number of uncompressed bytes n (0 marks an empty block, nothing follows)
+ *   int  size of the code length header, followed by the header, a packed byte array (see BitWriter) holding
+ *        the code lengths of the literal/length code and then of the distance code (see CanonicalCode)
+ *   int  size of the encoded data, followed by the packed encoded bytes: for every literal its code, for every
+ *        match the length code, its extra bits, the distance code and its extra bits
+ */
+
+import java.util.Arrays;
+
+public class Lz77Block {
+
+    /** Largest distance back that a match can refer to */
+    public static final int WINDOW_SIZE = 1 << 15;
+
+    /** Shortest and longest match */
+    public static final int MIN_MATCH = 3;
+    public static final int MAX_MATCH = 258;
+
+    /** Number of earlier positions with the same hash that are tried for every match */
+    public static final int MAX_CHAIN = 64;
+
+    private static final int HASH_BITS = 15;
+
+    private static final int[] LENGTH_BASE = {3, 4, 5, 6, 7, 8, 9, 10, 11, 13, 15, 17, 19, 23, 27, 31, 35, 43, 51,
+            59, 67, 83, 99, 115, 131, 163, 195, 227, 258};
+    private static final int[] LENGTH_EXTRA = {0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 2, 2, 3, 3, 3, 3, 4, 4, 4,
+            4, 5, 5, 5, 5, 0};
+    private static final int[] DISTANCE_BASE = {1, 2, 3, 4, 5, 7, 9, 13, 17, 25, 33, 49, 65, 97, 129, 193, 257,
+            385, 513, 769, 1025, 1537, 2049, 3073, 4097, 6145, 8193, 12289, 16385, 24577};
+    private static final int[] DISTANCE_EXTRA = {0, 0, 0, 0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5, 6, 6, 7, 7, 8, 8, 9, 9,
+            10, 10, 11, 11, 12, 12, 13, 13};
+
+    private static final int LITERAL_LENGTH_SYMBOLS = 256 + LENGTH_BASE.length;
+
+    // length code of each match length, and distance code of each distance (through the two halves
+    // [0, 256) for distances up to 256 and [256, 512) for (distance - 1) >>> 7 above that, as in zlib)
+    private static final int[] LENGTH_CODE = new int[MAX_MATCH + 1];
+    private static final int[] DISTANCE_CODE = new int[512];
+
+    static {
+        for (int code = 0; code < LENGTH_BASE.length; code++) {
+            for (int length = LENGTH_BASE[code]; length < LENGTH_BASE[code] + (1 << LENGTH_EXTRA[code])
+                    && length <= MAX_MATCH; length++) {
+                LENGTH_CODE[length] = code;
+            }
+        }
+        LENGTH_CODE[MAX_MATCH] = LENGTH_BASE.length - 1;
+        for (int code = 0; code < DISTANCE_BASE.length; code++) {
+            for (int distance = DISTANCE_BASE[code]; distance < DISTANCE_BASE[code] + (1 << DISTANCE_EXTRA[code]);
+                 distance++) {
+                if (distance <= 256) {
+                    DISTANCE_CODE[distance - 1] = code;
+                } else {
+                    DISTANCE_CODE[256 + ((distance - 1) >>> 7)] = code;
+                }
+            }
+        }
+    }
+
+    /**
+     * Compresses data[offset .. offset + length) into a single block, with no code longer than maxCodeLength
+     * (9 to HuffmanCodec.MAX_CODE_LENGTH)
+     */
+    public static byte[] encode(byte[] data, int offset, int length, int maxCodeLength) {
+        if (maxCodeLength < 9 || maxCodeLength > HuffmanCodec.MAX_CODE_LENGTH) {
+            throw new IllegalArgumentException("Max code length must be between 9 and "
+                    + HuffmanCodec.MAX_CODE_LENGTH + ": " + maxCodeLength);
+        }
+        if (length == 0) {
+            return new byte[4];
+        }
+        CodecMetrics metrics = Metrics.get();
+        long start = System.nanoTime();
+        int[] tokens = new int[length];
+        int tokenCount = parse(data, offset, length, tokens);
+        long parsed = System.nanoTime();
+
+        long[] literalFrequencies = new long[LITERAL_LENGTH_SYMBOLS];
+        long[] distanceFrequencies = new long[DISTANCE_BASE.length];
+        for (int i = 0; i < tokenCount; i++) {
+            int token = tokens[i];
+            if (token >= 0) {
+                literalFrequencies[token]++;
+            } else {
+                literalFrequencies[256 + LENGTH_CODE[matchLength(token)]]++;
+                distanceFrequencies[distanceCode(matchDistance(token))]++;
+            }
+        }
+        long counted = System.nanoTime();
+        int[] literalLengths = LengthLimitedCode.codeLengths(literalFrequencies, maxCodeLength);
+        int[] distanceLengths = LengthLimitedCode.codeLengths(distanceFrequencies, maxCodeLength);
+        CodeTable literals = CanonicalCode.fromLengths(literalLengths);
+        CodeTable distances = CanonicalCode.fromLengths(distanceLengths);
+        long built = System.nanoTime();
+
+        BitWriter header = new BitWriter();
+        CanonicalCode.writeLengths(header, literalLengths);
+        CanonicalCode.writeLengths(header, distanceLengths);
+        long serialized = System.nanoTime();
+
+        BitWriter writer = new BitWriter(length / 3);
+        for (int i = 0; i < tokenCount; i++) {
+            int token = tokens[i];
+            if (token >= 0) {
+                writer.writeBits(literals.code(token), literals.length(token));
+                continue;
+            }
+            int matchLength = matchLength(token);
+            int lengthCode = LENGTH_CODE[matchLength];
+            writer.writeBits(literals.code(256 + lengthCode), literals.length(256 + lengthCode));
+            writer.writeBits(matchLength - LENGTH_BASE[lengthCode], LENGTH_EXTRA[lengthCode]);
+            int distance = matchDistance(token);
+            int distanceCode = distanceCode(distance);
+            writer.writeBits(distances.code(distanceCode), distances.length(distanceCode));
+            writer.writeBits(distance - DISTANCE_BASE[distanceCode], DISTANCE_EXTRA[distanceCode]);
+        }
+
+        byte[] codes = header.toByteArray();
+        byte[] encoded = writer.toByteArray();
+        byte[] block = new byte[12 + codes.length + encoded.length];
+        HuffmanBlock.writeInt(block, 0, length);
+        HuffmanBlock.writeInt(block, 4, codes.length);
+        System.arraycopy(codes, 0, block, 8, codes.length);
+        HuffmanBlock.writeInt(block, 8 + codes.length, encoded.length);
+        System.arraycopy(encoded, 0, block, 12 + codes.length, encoded.length);
+        long encodeEnd = System.nanoTime();
+
+        // finding the matches is part of encoding, it comes before the symbols can be counted
+        metrics.recordPhase(CodecMetrics.Phase.ENCODE, (parsed - start) + (encodeEnd - serialized));
+        metrics.recordPhase(CodecMetrics.Phase.COUNT, counted - parsed);
+        metrics.recordPhase(CodecMetrics.Phase.BUILD, built - counted);
+        metrics.recordPhase(CodecMetrics.Phase.SERIALIZE, serialized - built);
+        metrics.recordBytes(length, block.length);
+        Metrics.recordCode(metrics, literalFrequencies, literalLengths);
+        Metrics.recordCode(metrics, distanceFrequencies, distanceLengths);
+        return block;
+    }
+
+    /**
+     * Returns the number of uncompressed bytes held by the block that starts at block[offset]
+     */
+    public static int decodedLength(byte[] block, int offset) {
+        return HuffmanBlock.readInt(block, offset);
+    }
+
+    /**
+     * Decodes the block that starts at block[offset] into out, starting at outOffset, and returns the number
+     * of bytes written
+     */
+    public static int decode(byte[] block, int offset, byte[] out, int outOffset) {
+        long start = System.nanoTime();
+        int length = HuffmanBlock.readInt(block, offset);
+        if (length == 0) {
+            return 0;
+        }
+        if (length < 0 || outOffset < 0 || out.length - outOffset < length) {
+            throw new IllegalArgumentException("Block does not fit in the output: " + length + " bytes");
+        }
+        int headerLength = HuffmanBlock.readInt(block, offset + 4);
+        if (headerLength < 0 || offset + 12L + headerLength > block.length) {
+            throw new IllegalArgumentException("Corrupt block header length: " + headerLength);
+        }
+        BitReader header = new BitReader(block, offset + 8, headerLength);
+        int[] literalLengths = CanonicalCode.readLengths(header);
+        int[] distanceLengths = CanonicalCode.readLengths(header);
+        if (literalLengths.length > LITERAL_LENGTH_SYMBOLS || distanceLengths.length > DISTANCE_BASE.length) {
+            throw new IllegalArgumentException("Code length header has codes for unknown symbols");
+        }
+        HuffmanDecoder literals = new HuffmanDecoder(CanonicalCode.fromLengths(literalLengths));
+        HuffmanDecoder distances = new HuffmanDecoder(CanonicalCode.fromLengths(distanceLengths));
+
+        int dataOffset = offset + 12 + headerLength;
+        int dataLength = HuffmanBlock.readInt(block, dataOffset - 4);
+        if (dataLength < 0 || dataOffset + (long) dataLength > block.length) {
+            throw new IllegalArgumentException("Corrupt block data length: " + dataLength);
+        }
+        BitReader in = new BitReader(block, dataOffset, dataLength);
+        int n = outOffset;
+        int outEnd = outOffset + length;
+        while (n < outEnd) {
+            int symbol = literals.readSymbol(in);
+            if (symbol < 256) {
+                out[n++] = (byte) symbol;
+                continue;
+            }
+            int lengthCode = symbol - 256;
+            int matchLength = LENGTH_BASE[lengthCode] + readExtra(in, LENGTH_EXTRA[lengthCode]);
+            int distanceCode = distances.readSymbol(in);
+            int distance = DISTANCE_BASE[distanceCode] + readExtra(in, DISTANCE_EXTRA[distanceCode]);
+
+            if (distance > n - outOffset || matchLength > outEnd - n) {
+                throw new IllegalArgumentException("Match reaches outside of the block");
+            }
+            // byte by byte, since a match may overlap the bytes it produces
+            for (int from = n - distance, to = n + matchLength; n < to; ) {
+                out[n++] = out[from++];
+            }
+        }
+        if (in.bitsRemaining() != 0) {
+            throw new IllegalArgumentException("Encoded data has " + in.bitsRemaining() + " bits left over");
+        }
+        CodecMetrics metrics = Metrics.get();
+        metrics.recordPhase(CodecMetrics.Phase.DECODE, System.nanoTime() - start);
+        metrics.recordBytes(12L + headerLength + dataLength, length);
+        return length;
+    }
+
+    /**
+     * Reads the extra bits of a match length or distance
+     */
+    private static int readExtra(BitReader in, int extra) {
+        if (extra > in.bitsRemaining()) {
+            throw new IllegalArgumentException("Encoded data ends in the middle of a match");
+        }
+        return (int) in.readBits(extra);
+    }
+
+    /**
+     * Parses data[offset .. offset + length) into tokens and returns the number of tokens. A token >= 0 is a
+     * literal byte, a token < 0 is a match (see matchLength and matchDistance). The parse is greedy with one
+     * step of lazy evaluation: a match is put off by one byte if the next position has a longer one.
+     */
+    static int parse(byte[] data, int offset, int length, int[] tokens) {
+        int[] head = new int[1 << HASH_BITS];
+        int[] previous = new int[WINDOW_SIZE];
+        Arrays.fill(head, -1);
+        int end = offset + length;
+        int count = 0;
+        int i = offset;
+        while (i < end) {
+            long match = longestMatch(data, i, end, offset, head, previous);
+            insert(data, i, end, head, previous);
+            if (match != 0 && i + 1 < end) {
+                long next = longestMatch(data, i + 1, end, offset, head, previous);
+                if ((int) (next >>> 32) > (int) (match >>> 32)) {
+                    // emit a literal and take the longer match one byte later
+                    tokens[count++] = data[i] & 0xFF;
+                    i++;
+                    match = next;
+                    insert(data, i, end, head, previous);
+                }
+            }
+            if (match == 0) {
+                tokens[count++] = data[i] & 0xFF;
+                i++;
+                continue;
+            }
+            int matchLength = (int) (match >>> 32);
+            int distance = (int) match;
+            tokens[count++] = Integer.MIN_VALUE | ((matchLength - MIN_MATCH) << 16) | (distance - 1);
+            for (int j = i + 1; j < i + matchLength; j++) {
+                insert(data, j, end, head, previous);
+            }
+            i += matchLength;
+        }
+        return count;
+    }
+
+    /**
+     * Returns the longest match for data[position ..] as (length << 32) | distance, or 0 if there is no match
+     * of at least MIN_MATCH bytes within WINDOW_SIZE bytes
+     */
+    private static long longestMatch(byte[] data, int position, int end, int start, int[] head, int[] previous) {
+        if (end - position < MIN_MATCH) {
+            return 0;
+        }
+        int limit = Math.min(MAX_MATCH, end - position);
+        int bestLength = MIN_MATCH - 1;
+        int bestDistance = 0;
+        int candidate = head[hash(data, position)];
+        for (int chain = 0; chain < MAX_CHAIN && candidate >= start && position - candidate <= WINDOW_SIZE;
+             chain++) {
+            // the byte just past the best match so far is the one most likely to differ, check it first
+            if (data[candidate + bestLength] == data[position + bestLength]) {
+                int matchLength = 0;
+                while (matchLength < limit && data[candidate + matchLength] == data[position + matchLength]) {
+                    matchLength++;
+                }
+                if (matchLength > bestLength) {
+                    bestLength = matchLength;
+                    bestDistance = position - candidate;
+                    if (matchLength == limit) {
+                        break;
+                    }
+                }
+            }
+            int next = previous[candidate & (WINDOW_SIZE - 1)];
+            if (next >= candidate) {
+                break; // the slot was reused by a newer position, the rest of the chain is gone
+            }
+            candidate = next;
+        }
+        return bestDistance == 0 ? 0 : ((long) bestLength << 32) | bestDistance;
+    }
+
+    private static void insert(byte[] data, int position, int end, int[] head, int[] previous) {
+        if (end - position < MIN_MATCH) {
+            return;
+        }
+        int h = hash(data, position);
+        previous[position & (WINDOW_SIZE - 1)] = head[h];
+        head[h] = position;
+    }
+
+    private static int hash(byte[] data, int position) {
+        int key = ((data[position] & 0xFF) << 16) | ((data[position + 1] & 0xFF) << 8) | (data[position + 2] & 0xFF);
+        return (key * 0x9E3779B1) >>> (32 - HASH_BITS);
+    }
+
+    private static int matchLength(int token) {
+        return ((token >>> 16) & 0xFF) + MIN_MATCH;
+    }
+
+    private static int matchDistance(int token) {
+        return (token & 0xFFFF) + 1;
+    }
+
+    private static int distanceCode(int distance) {
+        return distance <= 256 ? DISTANCE_CODE[distance - 1] : DISTANCE_CODE[256 + ((distance - 1) >>> 7)];
+    }
+}
@@ -1,55 +1,301 @@
 /**
- * This class implements Huffman codes for files containing ASCII characters. It can read and compress a file and also
- * decode a compressed file and covert it back to its original ASCII characters.
+ * This class implements the command line tool for compressing and decompressing files with the block
+ * container format (see BlockCodec) and for measuring the codec on real data. Usage:
+ *
+ *   java Main compress   [options] [input [output]]
+ *   java Main decompress [options] [input [output]]
+ *   java Main bench      [options] input
+ *
+ * A missing input or output, or "-", means standard input or standard output. The options are:
+ *
+ *   --block-size n       uncompressed bytes per block (default 1048576)
+ *   --threads n          number of threads that compress and decompress blocks (default: all processors)
+ *   --max-code-length n  longest code in bits (default 15): 8 to 64, 8 to 10 with --interleaved, 8 to 32
+ *                        with --order1 and 9 to 32 with --lz77
+ *   --interleaved        write four stream blocks, which decode faster (see InterleavedBlock)
+ *   --order1             write order-1 blocks, with a code per preceding byte (see Order1Block)
+ *   --lz77               write LZ77 blocks, which replace repeated substrings by references (see Lz77Block)
+ *
+ * decompress recognizes the kind of container by itself. bench compresses and decompresses the input
+ * repeatedly with the given options and reports the throughput in MB/s, the compression ratio, the average
+ * code length against the entropy (for plain blocks) and the peak heap use.
  */
 
+import java.io.BufferedOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
 
 public class Main {
 
+    private static final String USAGE = "usage: java Main compress|decompress [options] [input [output]]\n"
+            + "       java Main bench [options] input\n"
+            + "options: --block-size n  --threads n  --max-code-length n  --interleaved  --order1  --lz77";
+
+    /**
+     * Thrown for command lines that cannot be run, the message says why
+     */
+    static class UsageException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        UsageException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * The options of a command line, with the positional arguments that are left
+     */
+    static class Options {
+        int blockSize = HuffmanBlock.DEFAULT_BLOCK_SIZE;
+        int threads = 0;
+        int maxCodeLength = 0;
+        int magic = BlockCodec.MAGIC;
+        List<String> files = new ArrayList<String>();
+
+        int maxCodeLength() {
+            if (maxCodeLength > 0) {
+                return maxCodeLength;
+            }
+            return magic == BlockCodec.INTERLEAVED_MAGIC ? InterleavedBlock.MAX_CODE_LENGTH
+                    : HuffmanBlock.DEFAULT_MAX_CODE_LENGTH;
+        }
+    }
+
     public static void main(String[] args) {
+        try {
+            if (args.length == 0) {
+                throw new UsageException("no command given");
+            }
+            Options options = parseOptions(Arrays.copyOfRange(args, 1, args.length));
+            run(args[0], options);
+        } catch (UsageException e) {
+            System.err.println("error: " + e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("error: " + e.getMessage());
+            System.exit(1);
+        }
+    }
 
-        // Read characters from input file
-        ArrayList<Character> characterArrayList = HuffmanCode.charactersFromFile("test4.txt");
-        String fileContents = "";
-        for (Character c : characterArrayList) {
-            fileContents = fileContents.concat(c.toString());
+    /**
+     * Runs command with options on a pool of options.threads threads (the common pool if no thread count was
+     * given), which is shut down again when the command is done
+     */
+    static void run(String command, Options options) throws IOException, UsageException {
+        ForkJoinPool pool = options.threads > 0 ? new ForkJoinPool(options.threads) : ForkJoinPool.commonPool();
+        try {
+            if (command.equals("compress")) {
+                compress(options, pool);
+            } else if (command.equals("decompress")) {
+                decompress(options, pool);
+            } else if (command.equals("bench")) {
+                bench(options, pool);
+            } else {
+                throw new UsageException("unknown command: " + command);
+            }
+        } finally {
+            if (pool != ForkJoinPool.commonPool()) {
+                pool.shutdown();
+            }
         }
+    }
 
-        // Generate frequency table
-        HashMap<Character, Integer> freq = HuffmanCode.frequenciesFromArray(characterArrayList);
-        // Generate tree that we can derive binary code for each character
-        HuffmanTree fullTree = HuffmanCode.generateCodingTree(freq);
+    static Options parseOptions(String[] args) throws UsageException {
+        Options options = new Options();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("--interleaved")) {
+                options.magic = BlockCodec.INTERLEAVED_MAGIC;
+            } else if (arg.equals("--order1")) {
+                options.magic = BlockCodec.ORDER1_MAGIC;
+            } else if (arg.equals("--lz77")) {
+                options.magic = BlockCodec.LZ77_MAGIC;
+            } else if (arg.equals("--block-size") || arg.equals("--threads") || arg.equals("--max-code-length")) {
+                if (i + 1 == args.length) {
+                    throw new UsageException(arg + " needs a value");
+                }
+                int value;
+                try {
+                    value = Integer.parseInt(args[++i]);
+                } catch (NumberFormatException e) {
+                    throw new UsageException(arg + " needs a number: " + args[i]);
+                }
+                if (value <= 0) {
+                    throw new UsageException(arg + " must be positive: " + value);
+                }
+                if (arg.equals("--block-size")) {
+                    options.blockSize = value;
+                } else if (arg.equals("--threads")) {
+                    options.threads = value;
+                } else {
+                    options.maxCodeLength = value;
+                }
+            } else if (arg.startsWith("--")) {
+                throw new UsageException("unknown option: " + arg);
+            } else {
+                options.files.add(arg);
+            }
+        }
+        // the same limits the block encoders check, so that a bad value is a usage error rather than a failed run
+        int minCodeLength = 8; // all 256 byte values must fit
+        int maxCodeLength = CodeTable.MAX_CODE_LENGTH;
+        String mode = "";
+        if (options.magic == BlockCodec.INTERLEAVED_MAGIC) {
+            maxCodeLength = InterleavedBlock.MAX_CODE_LENGTH;
+            mode = "--interleaved ";
+        } else if (options.magic == BlockCodec.ORDER1_MAGIC) {
+            maxCodeLength = HuffmanCodec.MAX_CODE_LENGTH;
+            mode = "--order1 ";
+        } else if (options.magic == BlockCodec.LZ77_MAGIC) {
+            minCodeLength = 9; // 256 literals plus the match length codes
+            maxCodeLength = HuffmanCodec.MAX_CODE_LENGTH;
+            mode = "--lz77 ";
+        }
+        if (options.maxCodeLength > 0
+                && (options.maxCodeLength < minCodeLength || options.maxCodeLength > maxCodeLength)) {
+            throw new UsageException(mode + "--max-code-length must be between " + minCodeLength + " and "
+                    + maxCodeLength + ": " + options.maxCodeLength);
+        }
+        return options;
+    }
 
-        // Generate encodings for the characters
-        HashMap<Character, ArrayList<Boolean>> encoding = fullTree.getEncodings();
-        String encodedString = HuffmanCode.encodeCharacters(characterArrayList, encoding);
+    static void compress(Options options, ForkJoinPool pool) throws IOException, UsageException {
+        String input = file(options, 0);
+        String output = file(options, 1);
+        if (input != null && output != null && options.magic == BlockCodec.MAGIC) {
+            // file to file: map the input instead of reading it onto the heap
+            MappedFileCodec.compressFile(input, output, options.blockSize, options.maxCodeLength(), pool);
+            return;
+        }
+        write(output, compress(read(input), options, pool));
+    }
 
-        // Convert binary strings to byte arrays
-        byte[] byteArray = BinaryHelper.byteArrayFromBitString(encodedString);
-        byte[] huffmanTreeEncoding = HuffmanTree.huffmanTreeToByteArray(fullTree);
+    static void decompress(Options options, ForkJoinPool pool) throws IOException, UsageException {
+        String input = file(options, 0);
+        String output = file(options, 1);
+        if (input != null && output != null && readMagic(input) == BlockCodec.MAGIC) {
+            // file to file: decode straight into the mapped output
+            MappedFileCodec.decompressFile(input, output, pool);
+            return;
+        }
+        write(output, BlockCodec.decompress(read(input), pool));
+    }
 
-        // Write byte arrays to file
-        BinaryHelper.writeBytesToFile("test2-htree.txt", huffmanTreeEncoding);
-        BinaryHelper.writeBytesToFile("test2-encoded.txt", byteArray);
+    static void bench(final Options options, final ForkJoinPool pool) throws IOException, UsageException {
+        final String input = file(options, 0);
+        if (input == null || options.files.size() > 1) {
+            throw new UsageException("bench needs exactly one input file");
+        }
+        final byte[] data = read(input);
+        CodecStats stats = new CodecStats();
+        Metrics.install(stats);
+        final byte[] container = compress(data, options, pool);
+        Metrics.install(CodecMetrics.NOOP);
 
-        // Decode strings from file and check that it matches the original encoded string
-        byte[] testByteArray = BinaryHelper.readBytesFromFile("test2-encoded.txt");
-        String encodedStringFromFile = BinaryHelper.bitStringFromByteArray(testByteArray);
+        resetPeakHeap();
+        double compressOps = HuffmanBenchmark.measure(new HuffmanBenchmark.Operation() {
+            public void run() {
+                compress(data, options, pool);
+            }
+        })[0];
+        double decompressOps = HuffmanBenchmark.measure(new HuffmanBenchmark.Operation() {
+            public void run() {
+                BlockCodec.decompress(container, pool);
+            }
+        })[0];
+        long peakHeap = peakHeap();
 
-        byte[] huffmanTreeEncoded = BinaryHelper.readBytesFromFile("test2-htree.txt");
-        HuffmanTree treeFromFile = HuffmanTree.huffmanTreeFromByteArray(huffmanTreeEncoded);
+        System.out.println(String.format(Locale.ROOT, "input            %s (%d bytes)", input, data.length));
+        System.out.println(String.format(Locale.ROOT, "compressed       %d bytes", container.length));
+        System.out.println(String.format(Locale.ROOT, "ratio            %.3f (%.2f bits per byte)",
+                (double) data.length / Math.max(1, container.length),
+                8.0 * container.length / Math.max(1, data.length)));
+        if (stats.getAverageCodeLength() > 0) {
+            System.out.println(String.format(Locale.ROOT, "code length      %.3f bits per symbol (entropy %.3f)",
+                    stats.getAverageCodeLength(), stats.getAverageEntropy()));
+        }
+        System.out.println(String.format(Locale.ROOT, "compress         %.1f MB/s", data.length * compressOps / 1e6));
+        System.out.println(String.format(Locale.ROOT, "decompress       %.1f MB/s", data.length * decompressOps / 1e6));
+        System.out.println(String.format(Locale.ROOT, "peak heap        %.1f MB", peakHeap / 1e6));
+    }
 
-        // Take an coded binary string and HuffmanTree of character to re-create original string
-        String original = HuffmanTree.decodeBinaryString(encodedStringFromFile, treeFromFile);
+    private static byte[] compress(byte[] data, Options options, ForkJoinPool pool) {
+        if (options.magic == BlockCodec.INTERLEAVED_MAGIC) {
+            return BlockCodec.compressInterleaved(data, options.blockSize, options.maxCodeLength(), pool);
+        } else if (options.magic == BlockCodec.ORDER1_MAGIC) {
+            return BlockCodec.compressOrder1(data, options.blockSize, options.maxCodeLength(), pool);
+        } else if (options.magic == BlockCodec.LZ77_MAGIC) {
+            return BlockCodec.compressLz77(data, options.blockSize, options.maxCodeLength(), pool);
+        }
+        return BlockCodec.compress(data, options.blockSize, options.maxCodeLength(), pool);
+    }
 
-        // This should print 0 if implementation is working
-        System.out.println(original.compareTo(fileContents));
+    /**
+     * Returns the file name at position index of the command line, or null for standard input or output
+     */
+    private static String file(Options options, int index) throws UsageException {
+        if (options.files.size() > 2) {
+            throw new UsageException("too many files: " + options.files);
+        }
+        if (index >= options.files.size() || options.files.get(index).equals("-")) {
+            return null;
+        }
+        return options.files.get(index);
+    }
 
+    private static byte[] read(String fileName) throws IOException {
+        try (InputStream in = (fileName == null ? System.in : new FileInputStream(fileName))) {
+            return in.readAllBytes();
+        }
+    }
 
+    /**
+     * Returns the first 4 bytes of a file as a big-endian int, or 0 if the file is shorter
+     */
+    private static int readMagic(String fileName) throws IOException {
+        try (InputStream in = new FileInputStream(fileName)) {
+            byte[] magic = in.readNBytes(4);
+            return magic.length == 4 ? HuffmanBlock.readInt(magic, 0) : 0;
+        }
+    }
 
+    private static void write(String fileName, byte[] bytes) throws IOException {
+        OutputStream out = (fileName == null ? System.out : new FileOutputStream(fileName));
+        try (OutputStream buffered = new BufferedOutputStream(out)) {
+            buffered.write(bytes);
+        }
+    }
 
+    private static void resetPeakHeap() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
 
+    /**
+     * Returns the sum of the peak usage of all heap memory pools since the last resetPeakHeap
+     */
+    private static long peakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
     }
 }
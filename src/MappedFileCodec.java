@@ -0,0 +1,212 @@
+/**
+ * This class implements file to file compression and decompression over memory mapped files. The input is
+ * mapped with FileChannel.map in windows of at most MAX_WINDOW bytes (so files over 2 GB work too) and the
+ * blocks are encoded and decoded straight from and into the MappedByteBuffers. Reads need no read syscalls or
+ * heap copies, and the heap never has to hold the whole file.
+ *
+ * Files are written in the BlockCodec container format. Because the compressed size is not known up front,
+ * compression writes each finished block with a positional FileChannel write and fills in the header and
+ * block index last. Decompression knows the output size from the header, so it maps the output file and
+ * decodes every block directly into place.
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+
+public class MappedFileCodec {
+
+    /** Largest region of a file mapped at once */
+    public static final int MAX_WINDOW = 1 << 30;
+
+    /**
+     * Compresses inputFileName into outputFileName with the default block size and code length limit
+     */
+    public static void compressFile(String inputFileName, String outputFileName) throws IOException {
+        compressFile(inputFileName, outputFileName, HuffmanBlock.DEFAULT_BLOCK_SIZE,
+                HuffmanBlock.DEFAULT_MAX_CODE_LENGTH, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Compresses inputFileName into outputFileName, encoding the blocks of each mapped window in parallel on pool
+     */
+    public static void compressFile(String inputFileName, String outputFileName, final int blockSize,
+                                    final int maxCodeLength, ForkJoinPool pool) throws IOException {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("Block size must be positive: " + blockSize);
+        }
+        try (FileChannel in = FileChannel.open(Paths.get(inputFileName), StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(Paths.get(outputFileName), StandardOpenOption.CREATE,
+                     StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+
+            long length = in.size();
+            long blocks = (length + blockSize - 1) / blockSize;
+            if (BlockCodec.FIXED_HEADER_SIZE + 8 * (blocks + 1) > Integer.MAX_VALUE - 8) {
+                throw new IllegalArgumentException("Too many blocks, use a larger block size");
+            }
+            int blockCount = (int) blocks;
+            byte[] header = new byte[BlockCodec.FIXED_HEADER_SIZE + 8 * (blockCount + 1)];
+            HuffmanBlock.writeInt(header, 0, BlockCodec.MAGIC);
+            HuffmanBlock.writeInt(header, 4, blockSize);
+            BlockCodec.writeLong(header, 8, length);
+            HuffmanBlock.writeInt(header, 16, blockCount);
+
+            // blocks are encoded in batches so only a few compressed blocks are on the heap at a time
+            int blocksPerWindow = Math.max(1, MAX_WINDOW / blockSize);
+            int batchSize = Math.max(1, 4 * pool.getParallelism());
+            long position = header.length;
+            long offset = 0;
+
+            for (int first = 0; first < blockCount; first += blocksPerWindow) {
+                int last = Math.min(blockCount, first + blocksPerWindow);
+                long windowStart = (long) first * blockSize;
+                final long windowLength = Math.min(length, (long) last * blockSize) - windowStart;
+                final MappedByteBuffer window = in.map(FileChannel.MapMode.READ_ONLY, windowStart, windowLength);
+
+                for (int batch = first; batch < last; batch += batchSize) {
+                    final int batchFirst = batch;
+                    final int[] checksums = new int[batchSize];
+                    List<Callable<byte[]>> tasks = new ArrayList<Callable<byte[]>>();
+                    for (int i = batch; i < Math.min(last, batch + batchSize); i++) {
+                        final int index = i;
+                        final int blockStart = (i - first) * blockSize;
+                        tasks.add(new Callable<byte[]>() {
+                            @Override
+                            public byte[] call() {
+                                int blockLength = (int) Math.min(blockSize, windowLength - blockStart);
+                                checksums[index - batchFirst] = BlockCodec.checksum(window, blockStart, blockLength);
+                                return HuffmanBlock.encode(window, blockStart, blockLength, maxCodeLength);
+                            }
+                        });
+                    }
+                    int i = batch;
+                    byte[] checksum = new byte[BlockCodec.CHECKSUM_SIZE];
+                    for (byte[] block : BlockCodec.runAll(pool, tasks)) {
+                        BlockCodec.writeLong(header, BlockCodec.FIXED_HEADER_SIZE + 8 * i, offset);
+                        HuffmanBlock.writeInt(checksum, 0, checksums[i - batch]);
+                        writeFully(out, ByteBuffer.wrap(block), position);
+                        writeFully(out, ByteBuffer.wrap(checksum), position + block.length);
+                        position += block.length + BlockCodec.CHECKSUM_SIZE;
+                        offset += block.length + BlockCodec.CHECKSUM_SIZE;
+                        i++;
+                    }
+                }
+            }
+            BlockCodec.writeLong(header, BlockCodec.FIXED_HEADER_SIZE + 8 * blockCount, offset);
+            writeFully(out, ByteBuffer.wrap(header), 0);
+        }
+    }
+
+    /**
+     * Decompresses inputFileName into outputFileName on the common ForkJoinPool
+     */
+    public static void decompressFile(String inputFileName, String outputFileName) throws IOException {
+        decompressFile(inputFileName, outputFileName, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Decompresses a BlockCodec container file into outputFileName, decoding the blocks of each mapped window
+     * in parallel on pool straight into the mapped output file
+     */
+    public static void decompressFile(String inputFileName, String outputFileName, ForkJoinPool pool)
+            throws IOException {
+        try (FileChannel in = FileChannel.open(Paths.get(inputFileName), StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(Paths.get(outputFileName), StandardOpenOption.CREATE,
+                     StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+
+            byte[] fixed = new byte[BlockCodec.FIXED_HEADER_SIZE];
+            readFully(in, ByteBuffer.wrap(fixed), 0);
+            if (HuffmanBlock.readInt(fixed, 0) != BlockCodec.MAGIC) {
+                throw new IOException("Not a block container: " + inputFileName);
+            }
+            final int blockSize = HuffmanBlock.readInt(fixed, 4);
+            final long length = BlockCodec.readLong(fixed, 8);
+            int blockCount = HuffmanBlock.readInt(fixed, 16);
+            if (blockSize <= 0 || length < 0 || blockCount != (length + blockSize - 1) / blockSize
+                    || BlockCodec.FIXED_HEADER_SIZE + 8L * (blockCount + 1) > in.size()) {
+                throw new IOException("Corrupt block container header: " + inputFileName);
+            }
+
+            byte[] index = new byte[8 * (blockCount + 1)];
+            readFully(in, ByteBuffer.wrap(index), BlockCodec.FIXED_HEADER_SIZE);
+            long dataStart = BlockCodec.FIXED_HEADER_SIZE + index.length;
+            long[] offsets = new long[blockCount + 1];
+            for (int i = 0; i <= blockCount; i++) {
+                offsets[i] = BlockCodec.readLong(index, 8 * i);
+                if (offsets[i] < (i == 0 ? 0 : offsets[i - 1] + 4 + BlockCodec.CHECKSUM_SIZE)
+                        || dataStart + offsets[i] > in.size()) {
+                    throw new IOException("Corrupt block container index: " + inputFileName);
+                }
+            }
+
+            int first = 0;
+            while (first < blockCount) {
+                // grow the window while both the compressed and the decompressed regions fit in MAX_WINDOW
+                int last = first + 1;
+                while (last < blockCount && (long) (last + 1 - first) * blockSize <= MAX_WINDOW
+                        && offsets[last + 1] - offsets[first] <= MAX_WINDOW) {
+                    last++;
+                }
+                if (offsets[last] - offsets[first] > Integer.MAX_VALUE) {
+                    throw new IOException("Compressed block too large to map: " + inputFileName);
+                }
+                final int windowFirst = first;
+                final long outStart = (long) first * blockSize;
+                final MappedByteBuffer source = in.map(FileChannel.MapMode.READ_ONLY, dataStart + offsets[first],
+                        offsets[last] - offsets[first]);
+                final MappedByteBuffer target = out.map(FileChannel.MapMode.READ_WRITE, outStart,
+                        Math.min(length, (long) last * blockSize) - outStart);
+
+                List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+                for (int i = first; i < last; i++) {
+                    final int blockNumber = i;
+                    final int blockStart = (int) (offsets[i] - offsets[first]);
+                    final int blockEnd = (int) (offsets[i + 1] - offsets[first]);
+                    final int outOffset = (i - windowFirst) * blockSize;
+                    final int expected = (int) Math.min(blockSize, length - outStart - outOffset);
+                    tasks.add(new Callable<Void>() {
+                        @Override
+                        public Void call() {
+                            if (HuffmanBlock.decodedLength(source, blockStart) != expected) {
+                                throw new IllegalArgumentException("Block has the wrong length");
+                            }
+                            HuffmanBlock.decode(source, blockStart, target, outOffset);
+                            BlockCodec.checkChecksum(HuffmanBlock.readInt(source, blockEnd - BlockCodec.CHECKSUM_SIZE),
+                                    BlockCodec.checksum(target, outOffset, expected), blockNumber);
+                            return null;
+                        }
+                    });
+                }
+                try {
+                    BlockCodec.runAll(pool, tasks);
+                } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+                    throw new IOException("Corrupt compressed block in " + inputFileName, e);
+                }
+                first = last;
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position);
+            if (n < 0) {
+                throw new IOException("Unexpected end of file");
+            }
+            position += n;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+/**
+ * This class holds the CodecMetrics that the codec reports to. Metrics are global to the JVM, like the
+ * platform MBean server, so they can be turned on without passing anything through the codec APIs.
+ */
+
+public class Metrics {
+
+    private static volatile CodecMetrics current = CodecMetrics.NOOP;
+
+    /**
+     * Returns the installed metrics, CodecMetrics.NOOP unless install was called
+     */
+    public static CodecMetrics get() {
+        return current;
+    }
+
+    /**
+     * Makes the codec report to metrics from now on. Pass CodecMetrics.NOOP to turn reporting off again.
+     */
+    public static void install(CodecMetrics metrics) {
+        if (metrics == null) {
+            throw new IllegalArgumentException("Metrics must not be null, use CodecMetrics.NOOP");
+        }
+        current = metrics;
+    }
+
+    /**
+     * Reports the cost of coding frequencies (indexed by symbol) with the code lengths to metrics. Does no
+     * work at all when metrics is NOOP.
+     */
+    static void recordCode(CodecMetrics metrics, long[] frequencies, int[] lengths) {
+        if (metrics == CodecMetrics.NOOP) {
+            return;
+        }
+        long symbols = 0;
+        long codeBits = 0;
+        for (int symbol = 0; symbol < frequencies.length; symbol++) {
+            symbols += frequencies[symbol];
+            codeBits += frequencies[symbol] * (symbol < lengths.length ? lengths[symbol] : 0);
+        }
+        double entropyBits = 0;
+        for (long frequency : frequencies) {
+            if (frequency > 0) {
+                entropyBits -= frequency * (Math.log((double) frequency / symbols) / Math.log(2));
+            }
+        }
+        metrics.recordCode(symbols, codeBits, entropyBits);
+    }
+}
@@ -0,0 +1,207 @@
+/**
+ * This class implements self-contained blocks coded with an order-1 model: the code used for each byte depends
+ * on the byte before it (the context; the first byte of a block uses context 0). Structured text such as JSON
+ * logs and CSV is far more predictable given the previous byte, so this usually beats the single order-0 code
+ * of HuffmanBlock at the cost of a larger header.
+ *
+ * A separate canonical code per context would make the header too big for rare contexts, so contexts are
+ * clustered: every context whose own code saves more bits than its code length header costs keeps its own
+ * table, and all the other contexts share one table built from their combined counts. A 256 entry map from
+ * context to table means the encoder and decoder pick the table for each byte with a single array index.
+ * A block is laid out as (ints are 4 byte big-endian):
+ *
+ *   int  number of uncompressed bytes n (0 marks an empty block, nothing follows)
+ *   int  size of the model header, followed by the header, a packed byte array (see BitWriter) holding the
+ *        number of tables t in 9 bits, the table index of each of the 256 contexts in 9 bits, and then the t
+ *        code length headers (see CanonicalCode.writeLengths)
+ *   int  size of the encoded data, followed by the packed encoded bytes
+ */
+
+public class Order1Block {
+
+    /** Number of contexts, one for each value of the previous byte */
+    public static final int CONTEXTS = 256;
+
+    private static final int TABLE_INDEX_BITS = 9;
+
+    /**
+     * Compresses data[offset .. offset + length) into a single order-1 block, with no code longer than
+     * maxCodeLength (8 to HuffmanCodec.MAX_CODE_LENGTH)
+     */
+    public static byte[] encode(byte[] data, int offset, int length, int maxCodeLength) {
+        if (maxCodeLength < 8 || maxCodeLength > HuffmanCodec.MAX_CODE_LENGTH) {
+            throw new IllegalArgumentException("Max code length must be between 8 and "
+                    + HuffmanCodec.MAX_CODE_LENGTH + ": " + maxCodeLength);
+        }
+        if (length == 0) {
+            return new byte[4];
+        }
+        CodecMetrics metrics = Metrics.get();
+        long start = System.nanoTime();
+        long[][] frequencies = Histogram.ofBytePairs(data, offset, length);
+        long counted = System.nanoTime();
+        int[] tableOf = new int[CONTEXTS];
+        int[][] lengths = cluster(frequencies, maxCodeLength, tableOf);
+        long built = System.nanoTime();
+
+        BitWriter header = new BitWriter();
+        header.writeBits(lengths.length, TABLE_INDEX_BITS);
+        for (int context = 0; context < CONTEXTS; context++) {
+            header.writeBits(tableOf[context], TABLE_INDEX_BITS);
+        }
+        CodeTable[] tables = new CodeTable[lengths.length];
+        for (int t = 0; t < lengths.length; t++) {
+            CanonicalCode.writeLengths(header, lengths[t]);
+            tables[t] = CanonicalCode.fromLengths(lengths[t]);
+        }
+        // one table per context, so the loop below needs a single array index per byte
+        CodeTable[] contextTables = new CodeTable[CONTEXTS];
+        for (int context = 0; context < CONTEXTS; context++) {
+            contextTables[context] = tables[tableOf[context]];
+        }
+        long serialized = System.nanoTime();
+
+        BitWriter writer = new BitWriter(length / 2);
+        int previous = 0;
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            int b = data[i] & 0xFF;
+            CodeTable table = contextTables[previous];
+            writer.writeBits(table.code(b), table.length(b));
+            previous = b;
+        }
+
+        byte[] model = header.toByteArray();
+        byte[] encoded = writer.toByteArray();
+        byte[] block = new byte[12 + model.length + encoded.length];
+        HuffmanBlock.writeInt(block, 0, length);
+        HuffmanBlock.writeInt(block, 4, model.length);
+        System.arraycopy(model, 0, block, 8, model.length);
+        HuffmanBlock.writeInt(block, 8 + model.length, encoded.length);
+        System.arraycopy(encoded, 0, block, 12 + model.length, encoded.length);
+        long encodeEnd = System.nanoTime();
+
+        metrics.recordPhase(CodecMetrics.Phase.COUNT, counted - start);
+        metrics.recordPhase(CodecMetrics.Phase.BUILD, built - counted);
+        metrics.recordPhase(CodecMetrics.Phase.SERIALIZE, serialized - built);
+        metrics.recordPhase(CodecMetrics.Phase.ENCODE, encodeEnd - serialized);
+        metrics.recordBytes(length, block.length);
+        for (int context = 0; context < CONTEXTS; context++) {
+            Metrics.recordCode(metrics, frequencies[context], lengths[tableOf[context]]);
+        }
+        return block;
+    }
+
+    /**
+     * Returns the number of uncompressed bytes held by the block that starts at block[offset]
+     */
+    public static int decodedLength(byte[] block, int offset) {
+        return HuffmanBlock.readInt(block, offset);
+    }
+
+    /**
+     * Decodes the block that starts at block[offset] into out, starting at outOffset, and returns the number
+     * of bytes written
+     */
+    public static int decode(byte[] block, int offset, byte[] out, int outOffset) {
+        long start = System.nanoTime();
+        int length = HuffmanBlock.readInt(block, offset);
+        if (length == 0) {
+            return 0;
+        }
+        if (length < 0 || outOffset < 0 || out.length - outOffset < length) {
+            throw new IllegalArgumentException("Block does not fit in the output: " + length + " bytes");
+        }
+        int modelLength = HuffmanBlock.readInt(block, offset + 4);
+        if (modelLength < 0 || offset + 12L + modelLength > block.length) {
+            throw new IllegalArgumentException("Corrupt model header length: " + modelLength);
+        }
+
+        BitReader model = new BitReader(block, offset + 8, modelLength);
+        int tableCount = (int) model.readBits(TABLE_INDEX_BITS);
+        int[] tableOf = new int[CONTEXTS];
+        for (int context = 0; context < CONTEXTS; context++) {
+            tableOf[context] = (int) model.readBits(TABLE_INDEX_BITS);
+            if (tableOf[context] >= tableCount) {
+                throw new IllegalArgumentException("Context " + context + " uses missing table " + tableOf[context]);
+            }
+        }
+        HuffmanDecoder[] decoders = new HuffmanDecoder[tableCount];
+        for (int t = 0; t < tableCount; t++) {
+            int[] lengths = CanonicalCode.readLengths(model);
+            if (lengths.length > 256) {
+                throw new IllegalArgumentException("Byte block has a code for symbol " + (lengths.length - 1));
+            }
+            decoders[t] = new HuffmanDecoder(CanonicalCode.fromLengths(lengths));
+        }
+        HuffmanDecoder[] contextDecoders = new HuffmanDecoder[CONTEXTS];
+        for (int context = 0; context < CONTEXTS; context++) {
+            contextDecoders[context] = decoders[tableOf[context]];
+        }
+
+        int dataOffset = offset + 12 + modelLength;
+        int dataLength = HuffmanBlock.readInt(block, dataOffset - 4);
+        if (dataLength < 0 || dataOffset + (long) dataLength > block.length) {
+            throw new IllegalArgumentException("Corrupt block data length: " + dataLength);
+        }
+        BitReader in = new BitReader(block, dataOffset, dataLength);
+        int previous = 0;
+        int outEnd = outOffset + length;
+        for (int n = outOffset; n < outEnd; n++) {
+            previous = contextDecoders[previous].readSymbol(in);
+            out[n] = (byte) previous;
+        }
+        if (in.bitsRemaining() != 0) {
+            throw new IllegalArgumentException("Encoded data has " + in.bitsRemaining() + " bits left over");
+        }
+        CodecMetrics metrics = Metrics.get();
+        metrics.recordPhase(CodecMetrics.Phase.DECODE, System.nanoTime() - start);
+        metrics.recordBytes(12L + modelLength + dataLength, length);
+        return length;
+    }
+
+    /**
+     * Picks the tables for the contexts with the pair counts frequencies[context][symbol], fills in tableOf and
+     * returns the code lengths of each table. Table 0 is the shared table.
+     */
+    static int[][] cluster(long[][] frequencies, int maxCodeLength, int[] tableOf) {
+        long[] total = new long[256];
+        for (long[] counts : frequencies) {
+            for (int b = 0; b < 256; b++) {
+                total[b] += counts[b];
+            }
+        }
+        int[] sharedLengths = LengthLimitedCode.codeLengths(total, maxCodeLength);
+
+        int[][] own = new int[CONTEXTS][];
+        long[] remaining = new long[256];
+        int tableCount = 1;
+        for (int context = 0; context < CONTEXTS; context++) {
+            long[] counts = frequencies[context];
+            int[] lengths = LengthLimitedCode.codeLengths(counts, maxCodeLength);
+            long ownBits = 8L * CanonicalCode.lengthsToByteArray(lengths).length + TABLE_INDEX_BITS;
+            long sharedBits = 0;
+            for (int b = 0; b < 256; b++) {
+                ownBits += counts[b] * lengths[b];
+                sharedBits += counts[b] * sharedLengths[b];
+            }
+            if (ownBits < sharedBits) {
+                own[context] = lengths;
+                tableOf[context] = tableCount++;
+            } else {
+                for (int b = 0; b < 256; b++) {
+                    remaining[b] += counts[b];
+                }
+            }
+        }
+
+        int[][] tables = new int[tableCount][];
+        tables[0] = LengthLimitedCode.codeLengths(remaining, maxCodeLength);
+        for (int context = 0; context < CONTEXTS; context++) {
+            if (own[context] != null) {
+                tables[tableOf[context]] = own[context];
+            }
+        }
+        return tables;
+    }
+}
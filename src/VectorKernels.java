@@ -0,0 +1,85 @@
+/**
+ * This class implements the parts of the codec that use the Vector API (jdk.incubator.vector), so that the
+ * CPU's vectors look up the codes of many symbols at once. The vectors are at most 256 bits (8 int lanes),
+ * even where the CPU has wider ones, because the 512 bit gathers of the JDK 17 incubator module crash the JIT
+ * compiled code. The module is optional: HuffmanCodec only loads this class after it found the module in the
+ * boot layer (run with --add-modules jdk.incubator.vector), and otherwise uses its scalar loop.
+ *
+ * lookupPairs gathers the code and length of PAIRS pairs of adjacent bytes, one gather per byte from a table
+ * that packs both, and merges each pair into a single code, so the serial bit packing loop that follows needs
+ * half as many steps.
+ */
+
+import java.nio.ByteOrder;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+class VectorKernels {
+
+    // capped at 256 bits, see the class comment
+    private static final VectorSpecies<Integer> SPECIES =
+            IntVector.SPECIES_PREFERRED.length() > 8 ? IntVector.SPECIES_256 : IntVector.SPECIES_PREFERRED;
+
+    // one short lane per byte pair, as many lanes as SPECIES
+    private static final VectorSpecies<Short> PAIR_SPECIES =
+            ShortVector.SPECIES_PREFERRED.withShape(VectorShape.forBitSize(SPECIES.vectorBitSize() / 2));
+
+    /** Number of byte pairs looked up by one call to lookupPairs */
+    static final int PAIRS = 4 * SPECIES.length();
+
+    /** Longest code lookupPairs accepts, so that a merged pair fits in an int lane */
+    static final int MAX_CODE_LENGTH = 16;
+
+    /** Number of ints in the scratch array lookupPairs works in */
+    static final int SCRATCH_SIZE = 4 * PAIRS;
+
+    /**
+     * Returns the table lookupPairs takes: for each byte value its code shifted left by 5 bits, ORed with its
+     * length, so that one gather fetches both
+     */
+    static int[] packCodes(long[] codes, int[] lengths) {
+        int[] packed = new int[codes.length];
+        for (int b = 0; b < codes.length; b++) {
+            packed[b] = (int) (codes[b] << 5) | lengths[b];
+        }
+        return packed;
+    }
+
+    /**
+     * Looks up the codes of the 2 * PAIRS bytes src[offset ..] in packed (see packCodes). Stores the code of
+     * each pair, first byte first, in scratch[0 .. PAIRS) and its length in scratch[PAIRS .. 2 * PAIRS); the
+     * rest of scratch (SCRATCH_SIZE ints) holds the byte values. Returns false, with the results undefined, if
+     * one of the bytes has no code.
+     */
+    static boolean lookupPairs(byte[] src, int offset, int[] packed, int[] scratch) {
+        // the gathers take their indexes from an int array, so widen the bytes first: read each pair as a little
+        // endian short, so the first byte is its low half, and split the halves into int lanes
+        int even = 2 * PAIRS;
+        int odd = 3 * PAIRS;
+        for (int k = 0; k < PAIRS; k += SPECIES.length()) {
+            ShortVector pairs = ShortVector.fromByteArray(PAIR_SPECIES, src, offset + 2 * k, ByteOrder.LITTLE_ENDIAN);
+            ((IntVector) pairs.and((short) 0xFF).convertShape(VectorOperators.S2I, SPECIES, 0))
+                    .intoArray(scratch, even + k);
+            // LSHR shifts zeros into the 16 bit lane, so the high half needs no mask
+            ((IntVector) pairs.lanewise(VectorOperators.LSHR, 8).convertShape(VectorOperators.S2I, SPECIES, 0))
+                    .intoArray(scratch, odd + k);
+        }
+        for (int k = 0; k < PAIRS; k += SPECIES.length()) {
+            IntVector first = IntVector.fromArray(SPECIES, packed, 0, scratch, even + k);
+            IntVector second = IntVector.fromArray(SPECIES, packed, 0, scratch, odd + k);
+            IntVector firstLength = first.and(31);
+            IntVector secondLength = second.and(31);
+            if (firstLength.min(secondLength).compare(VectorOperators.EQ, 0).anyTrue()) {
+                return false;
+            }
+            first.lanewise(VectorOperators.LSHR, 5).lanewise(VectorOperators.LSHL, secondLength)
+                    .or(second.lanewise(VectorOperators.LSHR, 5)).intoArray(scratch, k);
+            firstLength.add(secondLength).intoArray(scratch, PAIRS + k);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,182 @@
+/**
+ * This class implements the tests for BlockCodec containers: round trips in each of the four block kinds,
+ * range reads, and the rejection of truncated or corrupted containers with an IllegalArgumentException.
+ */
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+public class BlockCodecTest {
+
+    static final int BLOCK_SIZE = 16384;
+
+    /**
+     * Returns length bytes of text made of a few words, so that every block kind has something to compress
+     */
+    static byte[] sample(int length, long seed) {
+        String[] words = {"huffman ", "block ", "code ", "length ", "the ", "of ", "{\"id\": ", "42, ", "\n"};
+        Random random = new Random(seed);
+        byte[] data = new byte[length];
+        int n = 0;
+        while (n < length) {
+            byte[] word = words[random.nextInt(words.length)].getBytes();
+            int count = Math.min(word.length, length - n);
+            System.arraycopy(word, 0, data, n, count);
+            n += count;
+        }
+        return data;
+    }
+
+    static byte[] compress(int magic, byte[] data, int maxCodeLength) {
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        if (magic == BlockCodec.INTERLEAVED_MAGIC) {
+            return BlockCodec.compressInterleaved(data, BLOCK_SIZE, maxCodeLength, pool);
+        } else if (magic == BlockCodec.ORDER1_MAGIC) {
+            return BlockCodec.compressOrder1(data, BLOCK_SIZE, maxCodeLength, pool);
+        } else if (magic == BlockCodec.LZ77_MAGIC) {
+            return BlockCodec.compressLz77(data, BLOCK_SIZE, maxCodeLength, pool);
+        }
+        return BlockCodec.compress(data, BLOCK_SIZE, maxCodeLength, pool);
+    }
+
+    static final int[] MAGICS = {BlockCodec.MAGIC, BlockCodec.INTERLEAVED_MAGIC, BlockCodec.ORDER1_MAGIC,
+            BlockCodec.LZ77_MAGIC};
+
+    static int maxCodeLength(int magic) {
+        return magic == BlockCodec.INTERLEAVED_MAGIC ? InterleavedBlock.MAX_CODE_LENGTH
+                : HuffmanBlock.DEFAULT_MAX_CODE_LENGTH;
+    }
+
+    /**
+     * Returns the index in container of the CRC32C stored after block i
+     */
+    static int checksumPosition(byte[] container, int i) {
+        int blockCount = HuffmanBlock.readInt(container, 16);
+        int indexEnd = BlockCodec.FIXED_HEADER_SIZE + 8 * (blockCount + 1);
+        return indexEnd + (int) BlockCodec.readLong(container, BlockCodec.FIXED_HEADER_SIZE + 8 * (i + 1))
+                - BlockCodec.CHECKSUM_SIZE;
+    }
+
+    static IllegalArgumentException decompressFails(byte[] container) {
+        try {
+            BlockCodec.decompress(container);
+        } catch (IllegalArgumentException e) {
+            return e;
+        }
+        throw new AssertionError("corrupt container was decompressed");
+    }
+
+    @Test
+    public void roundTripsInEveryMode() {
+        byte[] data = sample(5 * BLOCK_SIZE + 123, 1);
+        for (int magic : MAGICS) {
+            byte[] container = compress(magic, data, maxCodeLength(magic));
+            assertEquals(magic, HuffmanBlock.readInt(container, 0));
+            assertArrayEquals(data, BlockCodec.decompress(container));
+        }
+    }
+
+    @Test
+    public void roundTripsRandomBytesInEveryMode() {
+        byte[] data = new byte[3 * BLOCK_SIZE];
+        new Random(2).nextBytes(data);
+        for (int magic : MAGICS) {
+            assertArrayEquals(data, BlockCodec.decompress(compress(magic, data, maxCodeLength(magic))));
+        }
+    }
+
+    @Test
+    public void roundTripsEmptyAndSingleByteInputs() {
+        for (int magic : MAGICS) {
+            for (byte[] data : new byte[][] {new byte[0], {7}, new byte[1000]}) {
+                assertArrayEquals(data, BlockCodec.decompress(compress(magic, data, maxCodeLength(magic))));
+            }
+        }
+    }
+
+    @Test
+    public void decompressRangeReturnsTheSlice() {
+        byte[] data = sample(4 * BLOCK_SIZE + 77, 3);
+        for (int magic : MAGICS) {
+            byte[] container = compress(magic, data, maxCodeLength(magic));
+            long[][] ranges = {{0, 10}, {BLOCK_SIZE - 5, 10}, {BLOCK_SIZE, BLOCK_SIZE}, {100, 3 * BLOCK_SIZE},
+                    {data.length - 1, 1}, {17, 0}};
+            for (long[] range : ranges) {
+                int from = (int) range[0];
+                int length = (int) range[1];
+                assertArrayEquals(Arrays.copyOfRange(data, from, from + length),
+                        BlockCodec.decompressRange(container, from, length));
+            }
+        }
+    }
+
+    @Test
+    public void wrongChecksumIsRejected() {
+        byte[] data = sample(3 * BLOCK_SIZE, 4);
+        for (int magic : MAGICS) {
+            byte[] container = compress(magic, data, maxCodeLength(magic));
+            container[checksumPosition(container, 1)] ^= 1;
+            assertTrue(decompressFails(container).getMessage().contains("Checksum mismatch in block 1"));
+        }
+    }
+
+    @Test
+    public void corruptPlainBlockSizesAreRejected() {
+        byte[] data = sample(2 * BLOCK_SIZE, 5);
+        byte[] container = compress(BlockCodec.MAGIC, data, HuffmanBlock.DEFAULT_MAX_CODE_LENGTH);
+        int blockStart = BlockCodec.FIXED_HEADER_SIZE + 8 * 3;
+        int headerLength = HuffmanBlock.readInt(container, blockStart + 4);
+        for (int value : new int[] {0x7FFF0000, -5, Integer.MIN_VALUE}) {
+            byte[] header = container.clone();
+            HuffmanBlock.writeInt(header, blockStart + 4, value);
+            decompressFails(header);
+
+            byte[] dataLength = container.clone();
+            HuffmanBlock.writeInt(dataLength, blockStart + 8 + headerLength, value);
+            decompressFails(dataLength);
+        }
+    }
+
+    @Test
+    public void truncatedContainersAreRejected() {
+        byte[] data = sample(3 * BLOCK_SIZE, 6);
+        for (int magic : MAGICS) {
+            byte[] container = compress(magic, data, maxCodeLength(magic));
+            for (int length : new int[] {0, 3, BlockCodec.FIXED_HEADER_SIZE, 40, container.length / 2,
+                    container.length - 1}) {
+                decompressFails(Arrays.copyOf(container, length));
+            }
+        }
+    }
+
+    @Test
+    public void randomlyCorruptedContainersFailOrDecodeCorrectly() {
+        byte[] data = sample(3 * BLOCK_SIZE + 11, 7);
+        Random random = new Random(8);
+        for (int magic : MAGICS) {
+            byte[] container = compress(magic, data, maxCodeLength(magic));
+            for (int trial = 0; trial < 300; trial++) {
+                byte[] corrupt = container.clone();
+                int position = random.nextInt(corrupt.length);
+                corrupt[position] ^= (byte) (1 + random.nextInt(255));
+                byte[] out;
+                try {
+                    out = BlockCodec.decompress(corrupt);
+                } catch (IllegalArgumentException e) {
+                    continue;
+                }
+                if (!Arrays.equals(data, out)) {
+                    fail("corrupt byte " + position + " gave wrong output without an error");
+                }
+            }
+        }
+    }
+}
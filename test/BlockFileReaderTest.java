@@ -0,0 +1,104 @@
+/**
+ * This class implements the tests for container files: MappedFileCodec round trips, range reads through
+ * BlockFileReader in every block kind, and an IOException for a file with a corrupt block.
+ */
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class BlockFileReaderTest {
+
+    private Path directory;
+
+    @BeforeEach
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("huffman-test");
+    }
+
+    @AfterEach
+    public void deleteDirectory() throws IOException {
+        for (Path file : Files.newDirectoryStream(directory)) {
+            Files.delete(file);
+        }
+        Files.delete(directory);
+    }
+
+    private String write(String name, byte[] bytes) throws IOException {
+        Path file = directory.resolve(name);
+        Files.write(file, bytes);
+        return file.toString();
+    }
+
+    @Test
+    public void mappedFileRoundTrips() throws IOException {
+        byte[] data = BlockCodecTest.sample(5 * BlockCodecTest.BLOCK_SIZE + 9, 1);
+        String input = write("input", data);
+        String compressed = directory.resolve("compressed").toString();
+        String output = directory.resolve("output").toString();
+        MappedFileCodec.compressFile(input, compressed, BlockCodecTest.BLOCK_SIZE,
+                HuffmanBlock.DEFAULT_MAX_CODE_LENGTH, ForkJoinPool.commonPool());
+        MappedFileCodec.decompressFile(compressed, output);
+        assertArrayEquals(data, Files.readAllBytes(Path.of(output)));
+        assertArrayEquals(data, BlockCodec.decompress(Files.readAllBytes(Path.of(compressed))));
+    }
+
+    @Test
+    public void rangeReadsMatchTheOriginal() throws IOException {
+        int blockSize = BlockCodecTest.BLOCK_SIZE;
+        byte[] data = BlockCodecTest.sample(4 * blockSize + 500, 2);
+        for (int magic : BlockCodecTest.MAGICS) {
+            String file = write("container-" + Integer.toHexString(magic),
+                    BlockCodecTest.compress(magic, data, BlockCodecTest.maxCodeLength(magic)));
+            BlockFileReader reader = new BlockFileReader(file);
+            try {
+                assertEquals(data.length, reader.length());
+                assertEquals(blockSize, reader.blockSize());
+                int[][] ranges = {{0, 1}, {blockSize - 3, 6}, {blockSize, blockSize}, {10, 3 * blockSize + 7},
+                        {data.length - 20, 20}, {0, data.length}};
+                for (int[] range : ranges) {
+                    byte[] out = new byte[range[1] + 4];
+                    reader.read(range[0], out, 2, range[1]);
+                    assertArrayEquals(Arrays.copyOfRange(data, range[0], range[0] + range[1]),
+                            Arrays.copyOfRange(out, 2, 2 + range[1]));
+                }
+            } finally {
+                reader.close();
+            }
+            assertArrayEquals(Arrays.copyOfRange(data, 1000, 1000 + blockSize),
+                    BlockFileReader.decompressRange(file, 1000, blockSize));
+        }
+    }
+
+    @Test
+    public void corruptBlockFailsTheRead() throws IOException {
+        byte[] data = BlockCodecTest.sample(3 * BlockCodecTest.BLOCK_SIZE, 3);
+        byte[] container = BlockCodecTest.compress(BlockCodec.MAGIC, data, HuffmanBlock.DEFAULT_MAX_CODE_LENGTH);
+        container[BlockCodecTest.checksumPosition(container, 1)] ^= 1;
+        String file = write("corrupt", container);
+        BlockFileReader reader = new BlockFileReader(file);
+        try {
+            byte[] out = new byte[10];
+            reader.read(0, out, 0, 10); // block 0 is intact
+            assertArrayEquals(Arrays.copyOf(data, 10), out);
+            try {
+                reader.read(BlockCodecTest.BLOCK_SIZE + 5, out, 0, 10);
+                throw new AssertionError("corrupt block was read");
+            } catch (IOException e) {
+                assertTrue(e.getMessage().startsWith("Corrupt compressed block 1"));
+            }
+        } finally {
+            reader.close();
+        }
+    }
+}
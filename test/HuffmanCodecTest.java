@@ -0,0 +1,107 @@
+/**
+ * This class implements the tests for HuffmanCodec. compress must write exactly the bytes of the scalar
+ * reference encoder (HuffmanCode.encodeBytes), whether or not it takes the vector path; with the build's
+ * --add-modules jdk.incubator.vector it does for codes of at most VectorKernels.MAX_CODE_LENGTH bits.
+ */
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class HuffmanCodecTest {
+
+    /**
+     * Returns length bytes from an alphabet of alphabet values, most of them from the first few
+     */
+    static byte[] skewed(int length, int alphabet, Random random) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (random.nextInt(4) != 0 ? random.nextInt(Math.min(alphabet, 4))
+                    : random.nextInt(alphabet));
+        }
+        return data;
+    }
+
+    @Test
+    public void compressWritesTheReferenceEncoding() {
+        Random random = new Random(1);
+        for (int trial = 0; trial < 200; trial++) {
+            byte[] data = skewed(random.nextInt(5000), 1 + random.nextInt(256), random);
+            long[] frequencies = Histogram.ofBytes(data, 0, data.length);
+            for (int b = 0; b < 256; b++) {
+                frequencies[b]++;
+            }
+            int[] lengths = LengthLimitedCode.codeLengths(frequencies, 8 + random.nextInt(13));
+            HuffmanCodec codec = new HuffmanCodec(lengths);
+
+            byte[] compressed = codec.compress(data);
+            byte[] reference = HuffmanCode.encodeBytes(data, 0, data.length, CanonicalCode.fromLengths(lengths));
+            assertEquals(data.length, HuffmanBlock.readInt(compressed, 0));
+            assertArrayEquals(reference, Arrays.copyOfRange(compressed, 4, compressed.length));
+            assertArrayEquals(data, codec.decompress(compressed));
+        }
+    }
+
+    @Test
+    public void bufferMethodsMatchArrayMethods() {
+        byte[] data = BlockCodecTest.sample(20000, 2);
+        HuffmanCodec codec = HuffmanCodec.fromFrequencies(Histogram.ofBytes(data, 0, data.length));
+        byte[] compressed = codec.compress(data);
+
+        ByteBuffer dst = ByteBuffer.allocateDirect(codec.maxCompressedLength(data.length));
+        assertEquals(compressed.length, codec.compress(ByteBuffer.wrap(data), dst));
+        dst.flip();
+        byte[] bufferCompressed = new byte[dst.remaining()];
+        dst.duplicate().get(bufferCompressed);
+        assertArrayEquals(compressed, bufferCompressed);
+
+        ByteBuffer out = ByteBuffer.allocateDirect(data.length);
+        assertEquals(data.length, codec.decompress(dst, out));
+        byte[] decompressed = new byte[data.length];
+        out.flip();
+        out.get(decompressed);
+        assertArrayEquals(data, decompressed);
+    }
+
+    @Test
+    public void decompressWritesNothingPastTheHeaderLength() {
+        byte[] data = BlockCodecTest.sample(1000, 3);
+        HuffmanCodec codec = HuffmanCodec.fromFrequencies(Histogram.ofBytes(data, 0, data.length));
+        byte[] compressed = codec.compress(data);
+        HuffmanBlock.writeInt(compressed, 0, 10); // claims fewer bytes than the encoded data holds
+
+        byte[] out = new byte[data.length];
+        Arrays.fill(out, (byte) -1);
+        try {
+            codec.decompress(compressed, 0, compressed.length, out, 0);
+            throw new AssertionError("left over data was accepted");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        for (int i = 10; i < out.length; i++) {
+            assertEquals(-1, out[i]);
+        }
+    }
+
+    @Test
+    public void byteWithoutCodeIsRejected() {
+        long[] frequencies = new long[256];
+        frequencies['a'] = 5;
+        frequencies['b'] = 3;
+        HuffmanCodec codec = HuffmanCodec.fromFrequencies(frequencies);
+        byte[] data = new byte[1000];
+        Arrays.fill(data, (byte) 'a');
+        data[700] = 'z';
+        try {
+            codec.compress(data);
+            throw new AssertionError("byte without a code was compressed");
+        } catch (IllegalArgumentException e) {
+            assertEquals("No encoding for byte: " + (int) 'z', e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ * This class implements the tests for the single file format (HuffmanFile) and the block stream format
+ * (HuffmanOutputStream and HuffmanInputStream): round trips, and an IOException rather than an unchecked
+ * exception or OutOfMemoryError for truncated data and corrupt size fields.
+ */
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class HuffmanFileTest {
+
+    // position of the code length header size in the single file format: magic, version, original length
+    private static final int FILE_HEADER_LENGTH_POSITION = 13;
+
+    static byte[] writeFile(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        HuffmanFile.write(out, data, HuffmanBlock.DEFAULT_MAX_CODE_LENGTH);
+        return out.toByteArray();
+    }
+
+    static byte[] writeStream(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        HuffmanOutputStream stream = new HuffmanOutputStream(out, 4096, HuffmanBlock.DEFAULT_MAX_CODE_LENGTH);
+        stream.write(data);
+        stream.close();
+        return out.toByteArray();
+    }
+
+    static byte[] readStream(byte[] compressed) throws IOException {
+        InputStream in = new HuffmanInputStream(new ByteArrayInputStream(compressed));
+        try {
+            return in.readAllBytes();
+        } finally {
+            in.close();
+        }
+    }
+
+    static IOException readFileFails(byte[] file) {
+        try {
+            HuffmanFile.read(new ByteArrayInputStream(file));
+        } catch (IOException e) {
+            return e;
+        }
+        throw new AssertionError("corrupt file was read");
+    }
+
+    static IOException readStreamFails(byte[] compressed) {
+        try {
+            readStream(compressed);
+        } catch (IOException e) {
+            return e;
+        }
+        throw new AssertionError("corrupt stream was read");
+    }
+
+    @Test
+    public void fileRoundTrips() throws IOException {
+        byte[] random = new byte[50000];
+        new Random(1).nextBytes(random);
+        for (byte[] data : new byte[][] {new byte[0], {1}, BlockCodecTest.sample(70000, 2), random}) {
+            assertArrayEquals(data, HuffmanFile.read(new ByteArrayInputStream(writeFile(data))));
+            assertArrayEquals(data, HuffmanFile.decompress(HuffmanFile.compress(data)));
+        }
+    }
+
+    @Test
+    public void corruptFileHeaderLengthIsRejected() throws IOException {
+        byte[] file = writeFile(BlockCodecTest.sample(10000, 3));
+        for (int value : new int[] {0x7FFF0000, -5, CanonicalCode.maxHeaderLength(256) + 1}) {
+            byte[] corrupt = file.clone();
+            HuffmanBlock.writeInt(corrupt, FILE_HEADER_LENGTH_POSITION, value);
+            assertTrue(readFileFails(corrupt).getMessage().startsWith("Corrupt code length header size"));
+        }
+    }
+
+    @Test
+    public void truncatedOrFlippedFilesAreRejected() throws IOException {
+        byte[] file = writeFile(BlockCodecTest.sample(10000, 4));
+        for (int length : new int[] {0, 4, 12, 20, file.length / 2, file.length - 1}) {
+            readFileFails(Arrays.copyOf(file, length));
+        }
+        byte[] flipped = file.clone();
+        flipped[file.length / 2] ^= 0x10;
+        readFileFails(flipped);
+    }
+
+    @Test
+    public void streamRoundTrips() throws IOException {
+        for (byte[] data : new byte[][] {new byte[0], {1}, BlockCodecTest.sample(30000, 5)}) {
+            assertArrayEquals(data, readStream(writeStream(data)));
+        }
+    }
+
+    @Test
+    public void corruptStreamBlockSizesAreRejected() throws IOException {
+        byte[] compressed = writeStream(BlockCodecTest.sample(10000, 6));
+        int headerLength = HuffmanBlock.readInt(compressed, 4);
+        for (int value : new int[] {0x7FFF0000, -5}) {
+            byte[] header = compressed.clone();
+            HuffmanBlock.writeInt(header, 4, value);
+            assertTrue(readStreamFails(header).getMessage().startsWith("Corrupt block header length"));
+
+            byte[] data = compressed.clone();
+            HuffmanBlock.writeInt(data, 8 + headerLength, value);
+            assertTrue(readStreamFails(data).getMessage().startsWith("Corrupt block data length"));
+        }
+    }
+
+    @Test
+    public void truncatedStreamsAreRejected() throws IOException {
+        byte[] compressed = writeStream(BlockCodecTest.sample(10000, 7));
+        for (int length : new int[] {2, 6, 30, compressed.length / 2, compressed.length - 1}) {
+            readStreamFails(Arrays.copyOf(compressed, length));
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/**
+ * This class implements the tests for the option parsing of the command line tool: every container mode
+ * accepts the code lengths its blocks support and reports any other as a UsageException (exit code 2).
+ */
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class MainTest {
+
+    static Main.Options parse(String... args) throws Main.UsageException {
+        return Main.parseOptions(args);
+    }
+
+    static Main.UsageException parseFails(String... args) {
+        try {
+            Main.parseOptions(args);
+        } catch (Main.UsageException e) {
+            return e;
+        }
+        throw new AssertionError("options were accepted");
+    }
+
+    @Test
+    public void codeLengthRangesPerMode() throws Main.UsageException {
+        String[][] modes = {{}, {"--interleaved"}, {"--order1"}, {"--lz77"}};
+        int[][] ranges = {{8, CodeTable.MAX_CODE_LENGTH}, {8, InterleavedBlock.MAX_CODE_LENGTH},
+                {8, HuffmanCodec.MAX_CODE_LENGTH}, {9, HuffmanCodec.MAX_CODE_LENGTH}};
+        for (int m = 0; m < modes.length; m++) {
+            int min = ranges[m][0];
+            int max = ranges[m][1];
+            for (int length : new int[] {min, max}) {
+                assertEquals(length, parse(with(modes[m], length)).maxCodeLength());
+            }
+            for (int length : new int[] {1, min - 1, max + 1}) {
+                assertTrue(parseFails(with(modes[m], length)).getMessage()
+                        .contains("--max-code-length must be between " + min + " and " + max));
+            }
+        }
+    }
+
+    @Test
+    public void defaultCodeLengthFitsEveryMode() throws Main.UsageException {
+        assertEquals(HuffmanBlock.DEFAULT_MAX_CODE_LENGTH, parse().maxCodeLength());
+        assertEquals(InterleavedBlock.MAX_CODE_LENGTH, parse("--interleaved").maxCodeLength());
+        assertEquals(HuffmanBlock.DEFAULT_MAX_CODE_LENGTH, parse("--lz77").maxCodeLength());
+    }
+
+    @Test
+    public void badValuesAreUsageErrors() {
+        parseFails("--block-size");
+        parseFails("--threads", "two");
+        parseFails("--block-size", "0");
+        parseFails("--unknown");
+    }
+
+    private static String[] with(String[] mode, int maxCodeLength) {
+        String[] args = new String[mode.length + 2];
+        System.arraycopy(mode, 0, args, 0, mode.length);
+        args[mode.length] = "--max-code-length";
+        args[mode.length + 1] = Integer.toString(maxCodeLength);
+        return args;
+    }
+}